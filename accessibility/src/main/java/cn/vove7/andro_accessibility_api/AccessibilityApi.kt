@@ -16,6 +16,7 @@ import android.view.accessibility.AccessibilityEvent
 import android.view.accessibility.AccessibilityNodeInfo
 import android.view.accessibility.AccessibilityWindowInfo
 import androidx.annotation.RequiresApi
+import cn.vove7.auto.core.AccessibilityEvents
 import cn.vove7.auto.core.AppPageInfo
 import cn.vove7.auto.core.AutoApi
 import cn.vove7.auto.core.OnPageUpdate
@@ -63,12 +64,21 @@ abstract class AccessibilityApi : AccessibilityService(), AutoApi {
         registerImpl()
         PageUpdateMonitor.enableListenPageUpdate = enableListenPageUpdate
         PageUpdateMonitor.addOnPageUpdateListener(pageListener)
+        val extraEventTypes = AccessibilityEvents.requiredEventTypes
+        if (extraEventTypes != 0) {
+            // 订阅视图树缓存及事件等待需要的事件
+            serviceInfo = serviceInfo?.apply {
+                eventTypes = eventTypes or extraEventTypes
+            }
+        }
+        AccessibilityEvents.onSubscribe(serviceInfo?.eventTypes ?: 0)
     }
 
     override fun onDestroy() {
         super.onDestroy()
         AutoApi.clearImpl()
         PageUpdateMonitor.removeOnPageUpdateListener(pageListener)
+        AccessibilityEvents.onUnsubscribe()
         if (this::class.java == BASE_SERVICE_CLS) {
             baseService = null
         }
@@ -97,7 +107,8 @@ abstract class AccessibilityApi : AccessibilityService(), AutoApi {
      * @param event AccessibilityEvent?
      */
     override fun onAccessibilityEvent(event: AccessibilityEvent?) {
-        if (!enableListenPageUpdate || event == null) return
+        if (event == null) return
+        // enableListenPageUpdate 由 PageUpdateMonitor 判断
         PageUpdateMonitor.onAccessibilityEvent(event)
     }
 
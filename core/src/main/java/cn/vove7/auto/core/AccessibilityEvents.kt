@@ -0,0 +1,120 @@
+package cn.vove7.auto.core
+
+import android.os.SystemClock
+import android.view.accessibility.AccessibilityEvent
+import cn.vove7.auto.core.viewfinder.FinderConfig
+import cn.vove7.auto.core.viewfinder.HierarchyCache
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharedFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asSharedFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.update
+
+/**
+ * # AccessibilityEvents
+ * 无障碍事件流
+ *
+ * 由 [PageUpdateMonitor.onAccessibilityEvent] 输入，
+ * 来源为 AccessibilityService 及 UiAutomation 事件回调
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+object AccessibilityEvents {
+
+    /**
+     * 视图内容相关的事件类型
+     */
+    const val CONTENT_EVENT_TYPES = HierarchyCache.EVENT_TYPES
+
+    /**
+     * 当前配置需要服务额外订阅的事件类型
+     */
+    val requiredEventTypes: Int
+        get() = if (HierarchyCache.enabled || FinderConfig.FINDER_WAIT_BY_EVENT ||
+            FinderConfig.FINDER_RESULT_CACHE || FinderConfig.NODE_PROPERTY_CACHE ||
+            FinderConfig.NODE_IDENTITY
+        ) {
+            CONTENT_EVENT_TYPES
+        } else 0
+
+    /**
+     * 服务实际订阅的事件类型，服务连接时由 [onSubscribe] 记录，断开时清零
+     * 之后修改配置不会改变已连接服务的订阅
+     */
+    @Volatile
+    var subscribedEventTypes: Int = 0
+        private set
+
+    /**
+     * 已订阅窗口内容变化事件，[contentVersion] 未变即视图未变
+     */
+    val tracksContentChanges: Boolean
+        get() = subscribedEventTypes and AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED != 0
+
+    /**
+     * 服务设置 eventTypes 后调用，多个服务时合并
+     */
+    fun onSubscribe(eventTypes: Int) {
+        synchronized(this) { subscribedEventTypes = subscribedEventTypes or eventTypes }
+    }
+
+    /**
+     * 服务断开，不再认为视图变化可由事件得知
+     */
+    fun onUnsubscribe() {
+        synchronized(this) { subscribedEventTypes = 0 }
+    }
+
+    private val _events = MutableSharedFlow<AcsEvent>(
+        extraBufferCapacity = 64,
+        onBufferOverflow = BufferOverflow.DROP_OLDEST
+    )
+
+    /**
+     * 视图内容事件，AccessibilityEvent 会被系统回收，这里发送副本
+     */
+    val events: SharedFlow<AcsEvent> = _events.asSharedFlow()
+
+    private val _contentVersion = MutableStateFlow(0L)
+
+    /**
+     * 视图内容版本，每收到一个内容事件递增
+     * 等待时记录当前值，值改变即表示有新事件，不会遗漏
+     */
+    val contentVersion: StateFlow<Long> = _contentVersion.asStateFlow()
+
+    fun onAccessibilityEvent(event: AccessibilityEvent) {
+        if (event.eventType and CONTENT_EVENT_TYPES == 0) return
+        _contentVersion.update { it + 1 }
+        if (_events.subscriptionCount.value > 0) {
+            _events.tryEmit(
+                AcsEvent(
+                    event.eventType, event.packageName?.toString(),
+                    event.contentChangeTypes, event.windowId,
+                    SystemClock.elapsedRealtime()
+                )
+            )
+        }
+    }
+}
+
+/**
+ * 无障碍事件副本
+ * @property time SystemClock.elapsedRealtime()
+ */
+class AcsEvent(
+    val eventType: Int,
+    val packageName: String?,
+    val contentChangeTypes: Int,
+    val windowId: Int,
+    val time: Long
+) {
+    override fun toString(): String {
+        return "AcsEvent(type=${AccessibilityEvent.eventTypeToString(eventType)}, " +
+                "pkg=$packageName, changeTypes=$contentChangeTypes, windowId=$windowId)"
+    }
+}
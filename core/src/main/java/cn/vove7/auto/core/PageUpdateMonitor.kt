@@ -4,6 +4,7 @@ import android.app.UiAutomation
 import android.view.View
 import android.view.accessibility.AccessibilityEvent
 import cn.vove7.auto.core.PageUpdateMonitor.currentAppPageInfo
+import cn.vove7.auto.core.viewfinder.HierarchyCache
 import cn.vove7.auto.core.viewnode.ViewNode
 import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.launch
@@ -35,6 +36,8 @@ object PageUpdateMonitor : UiAutomation.OnAccessibilityEventListener {
     }
 
     override fun onAccessibilityEvent(event: AccessibilityEvent) {
+        HierarchyCache.onAccessibilityEvent(event)
+        AccessibilityEvents.onAccessibilityEvent(event)
         if (!enableListenPageUpdate) return
         if (event.eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
             // 界面切换
@@ -0,0 +1,145 @@
+package cn.vove7.auto.core.utils
+
+/**
+ * # AhoCorasick
+ * 多模式子串匹配，预先构建自动机，每次匹配只扫描一遍文本
+ *
+ * [containsAny] 与 `patterns.any { text.contains(it, ignoreCase) }` 结果一致，
+ * 耗时与模式数量无关；遇到第一个匹配即返回
+ *
+ * 线程安全，可在多个搜索间共享
+ *
+ * @param ignoreCase 忽略大小写，逐字符比较，规则同 String.contains(ignoreCase = true)
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+class AhoCorasick(patterns: Array<out String>, val ignoreCase: Boolean = true) {
+
+    // 状态数，0 为根
+    private val size: Int
+
+    // 转移表（开放寻址）：key = 父状态 shl 16 or 字符
+    private val keys: LongArray
+    private val targets: IntArray
+
+    // 失配转移
+    private val fail: IntArray
+
+    // 到达该状态时已匹配某个模式（含失配链上的后缀）
+    private val terminal: BooleanArray
+
+    init {
+        val capacity = patterns.sumOf { it.length } + 1
+        // 字典树，子状态以链表存储：first[s] -> next[e]，状态 e 即其入边
+        val first = IntArray(capacity) { -1 }
+        val next = IntArray(capacity)
+        val label = CharArray(capacity)
+        val term = BooleanArray(capacity)
+        var n = 1
+        for (p in patterns) {
+            var s = 0
+            for (ch in p) {
+                val c = fold(ch)
+                var e = first[s]
+                while (e >= 0 && label[e] != c) e = next[e]
+                if (e < 0) {
+                    e = n++
+                    label[e] = c
+                    next[e] = first[s]
+                    first[s] = e
+                }
+                s = e
+            }
+            term[s] = true
+        }
+        size = n
+
+        var tableSize = 8
+        while (tableSize < n * 2) tableSize = tableSize shl 1
+        keys = LongArray(tableSize) { EMPTY }
+        targets = IntArray(tableSize)
+        for (s in 0 until n) {
+            var e = first[s]
+            while (e >= 0) {
+                val key = key(s, label[e])
+                val i = slot(key)
+                keys[i] = key
+                targets[i] = e
+                e = next[e]
+            }
+        }
+
+        // 按层（BFS）计算失配转移，父状态的 fail 先于子状态确定
+        fail = IntArray(n)
+        val queue = IntArray(n)
+        var head = 0
+        var tail = 0
+        queue[tail++] = 0
+        while (head < tail) {
+            val s = queue[head++]
+            var e = first[s]
+            while (e >= 0) {
+                if (s != 0) {
+                    var f = fail[s]
+                    var g = goto(f, label[e])
+                    while (g < 0 && f != 0) {
+                        f = fail[f]
+                        g = goto(f, label[e])
+                    }
+                    fail[e] = if (g < 0) 0 else g
+                    if (term[fail[e]]) term[e] = true
+                }
+                queue[tail++] = e
+                e = next[e]
+            }
+        }
+        terminal = term.copyOf(n)
+    }
+
+    /**
+     * [text] 包含任一模式；含空模式时总是 true
+     */
+    fun containsAny(text: CharSequence): Boolean {
+        if (terminal[0]) return true
+        var s = 0
+        for (i in 0 until text.length) {
+            val c = fold(text[i])
+            while (true) {
+                val t = goto(s, c)
+                if (t >= 0) {
+                    s = t
+                    break
+                }
+                if (s == 0) break
+                s = fail[s]
+            }
+            if (terminal[s]) return true
+        }
+        return false
+    }
+
+    private fun goto(s: Int, c: Char): Int {
+        val key = key(s, c)
+        val i = slot(key)
+        return if (keys[i] == EMPTY) -1 else targets[i]
+    }
+
+    private fun key(s: Int, c: Char) = (s.toLong() shl 16) or c.code.toLong()
+
+    // key 所在或应插入的位置
+    private fun slot(key: Long): Int {
+        val mask = keys.size - 1
+        var i = ((key * -0x61c8864680b583ebL) ushr 40).toInt() and mask
+        while (keys[i] != EMPTY && keys[i] != key) i = (i + 1) and mask
+        return i
+    }
+
+    private fun fold(c: Char): Char = if (ignoreCase) foldChar(c) else c
+
+    override fun toString() = "AhoCorasick(states=$size)"
+
+    private companion object {
+        const val EMPTY = -1L
+    }
+}
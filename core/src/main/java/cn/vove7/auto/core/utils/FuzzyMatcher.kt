@@ -0,0 +1,193 @@
+package cn.vove7.auto.core.utils
+
+import java.util.Locale
+import kotlin.math.abs
+import kotlin.math.floor
+import kotlin.math.max
+
+/**
+ * # FuzzyMatcher
+ * 预处理查询串的模糊匹配，Myers / Hyyrö 位并行编辑距离
+ *
+ * 相似度定义同 [compareSimilarity]：1 - 编辑距离 / 较长串长度，两串都为空时为 NaN
+ *
+ * - 查询串按字符预先计算位向量，每个文本字符 O(⌈m / 64⌉) 次位运算
+ * - [matches] 由阈值得到允许的最大距离，长度差超出时直接拒绝，
+ *   遍历中距离下界超出时提前结束
+ *
+ * 线程安全，可在多个搜索间共享
+ *
+ * @param ignoreCase 忽略大小写，按 Locale.getDefault() 转小写
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+class FuzzyMatcher(pattern: String, val ignoreCase: Boolean = true) {
+
+    val pattern: String = fold(pattern).toString()
+
+    private val m = this.pattern.length
+
+    // 每 64 个查询字符一个块
+    private val blocks = (m + 63) ushr 6
+
+    // 最后一块的最高位，对应查询串最后一个字符
+    private val lastBit = if (m == 0) 0L else 1L shl ((m - 1) and 63)
+
+    // 字符 -> 位向量（开放寻址），peq[slot * blocks + b]
+    private val keys: IntArray
+    private val peq: LongArray
+
+    init {
+        var size = 8
+        while (size < m * 2) size = size shl 1
+        keys = IntArray(size) { EMPTY }
+        peq = LongArray(size * blocks)
+        for (i in 0 until m) {
+            val c = this.pattern[i].code
+            var s = slot(c)
+            if (keys[s] == EMPTY) keys[s] = c
+            s = s * blocks + (i ushr 6)
+            peq[s] = peq[s] or (1L shl (i and 63))
+        }
+    }
+
+    // c 所在或应插入的位置
+    private fun slot(c: Int): Int {
+        val mask = keys.size - 1
+        var s = (c * -0x61c88647 ushr 16) and mask
+        while (keys[s] != EMPTY && keys[s] != c) s = (s + 1) and mask
+        return s
+    }
+
+    /**
+     * 与 [compareSimilarity] 相同
+     */
+    fun similarity(text: CharSequence): Float {
+        val t = fold(text)
+        val len = max(t.length, m)
+        return 1 - foldedDistance(t, Int.MAX_VALUE).toFloat() / len
+    }
+
+    /**
+     * similarity(text) >= limit，不满足时尽早结束
+     */
+    fun matches(text: CharSequence, limit: Float): Boolean = !similarity(text, limit).isNaN()
+
+    /**
+     * 相似度不低于 [limit] 时返回相似度，否则返回 NaN
+     * 长度差已超出时不计算编辑距离，计算中超出时提前结束
+     */
+    fun similarity(text: CharSequence, limit: Float): Float {
+        val t = fold(text)
+        val len = max(t.length, m)
+        if (len == 0) return Float.NaN
+        val k = maxDistance(len, limit)
+        if (k < 0 || abs(t.length - m) > k) return Float.NaN
+        val d = foldedDistance(t, k)
+        return if (d <= k) 1 - d.toFloat() / len else Float.NaN
+    }
+
+    /**
+     * 编辑距离
+     * @return 超过 [maxDist] 时返回 maxDist + 1
+     */
+    fun distance(text: CharSequence, maxDist: Int = Int.MAX_VALUE): Int =
+        foldedDistance(fold(text), maxDist)
+
+    private fun foldedDistance(t: CharSequence, maxDist: Int): Int {
+        val n = t.length
+        if (m == 0 || n == 0) {
+            val d = max(m, n)
+            return if (d > maxDist) maxDist + 1 else d
+        }
+        return if (blocks == 1) distance1(t, maxDist) else distanceN(t, maxDist)
+    }
+
+    // m <= 64
+    private fun distance1(t: CharSequence, maxDist: Int): Int {
+        val n = t.length
+        var pv = -1L
+        var mv = 0L
+        var score = m
+        for (j in 0 until n) {
+            val s = slot(t[j].code)
+            val eq = if (keys[s] == EMPTY) 0L else peq[s]
+            val xv = eq or mv
+            val xh = (((eq and pv) + pv) xor pv) or eq
+            var ph = mv or (xh or pv).inv()
+            var mh = pv and xh
+            if (ph and lastBit != 0L) score++
+            else if (mh and lastBit != 0L) score--
+            // 全局距离：第 0 行水平差为 +1
+            ph = (ph shl 1) or 1L
+            mh = mh shl 1
+            pv = mh or (xv or ph).inv()
+            mv = ph and xv
+            // 之后每列最多减 1
+            if (score - (n - 1 - j) > maxDist) return maxDist + 1
+        }
+        return score
+    }
+
+    // 分块，块间传递水平差
+    private fun distanceN(t: CharSequence, maxDist: Int): Int {
+        val n = t.length
+        val pv = LongArray(blocks) { -1L }
+        val mv = LongArray(blocks)
+        var score = m
+        for (j in 0 until n) {
+            val s = slot(t[j].code)
+            val base = if (keys[s] == EMPTY) -1 else s * blocks
+            var hin = 1
+            for (b in 0 until blocks) {
+                var eq = if (base < 0) 0L else peq[base + b]
+                val p = pv[b]
+                val mm = mv[b]
+                val xv = eq or mm
+                if (hin < 0) eq = eq or 1L
+                val xh = (((eq and p) + p) xor p) or eq
+                var ph = mm or (xh or p).inv()
+                var mh = p and xh
+                val high = if (b == blocks - 1) lastBit else Long.MIN_VALUE
+                val hout = if (ph and high != 0L) 1 else if (mh and high != 0L) -1 else 0
+                ph = ph shl 1
+                mh = mh shl 1
+                if (hin < 0) mh = mh or 1L else if (hin > 0) ph = ph or 1L
+                pv[b] = mh or (xv or ph).inv()
+                mv[b] = ph and xv
+                hin = hout
+            }
+            score += hin
+            if (score - (n - 1 - j) > maxDist) return maxDist + 1
+        }
+        return score
+    }
+
+    // 满足 1 - d / len >= limit 的最大 d，与 compareSimilarity 的浮点计算一致
+    private fun maxDistance(len: Int, limit: Float): Int {
+        if (limit.isNaN()) return -1
+        var d = floor((1 - limit.toDouble()) * len).toInt().coerceIn(-1, len)
+        while (d < len && 1 - (d + 1).toFloat() / len >= limit) d++
+        while (d >= 0 && 1 - d.toFloat() / len < limit) d--
+        return d
+    }
+
+    // 只有需要时才生成小写字符串，否则直接使用原 CharSequence
+    private fun fold(s: CharSequence): CharSequence {
+        if (!ignoreCase) return s
+        for (i in 0 until s.length) {
+            val c = s[i]
+            if (c in 'A'..'Z' || (c >= '\u0080' && Character.toLowerCase(c) != c)) {
+                return s.toString().lowercase(Locale.getDefault())
+            }
+        }
+        return s
+    }
+
+    override fun toString() = "FuzzyMatcher($pattern)"
+
+    private companion object {
+        const val EMPTY = -1
+    }
+}
@@ -0,0 +1,70 @@
+package cn.vove7.auto.core.utils
+
+/**
+ * # TextSet
+ * 字符串集合，直接以 CharSequence（或其中一段）查询，不创建 String
+ *
+ * 忽略大小写时逐字符折叠比较，与 String.equals(ignoreCase = true) 一致
+ *
+ * 线程安全，可在多个搜索间共享
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+class TextSet(texts: Array<out String>, val ignoreCase: Boolean = true) {
+
+    // 开放寻址，null 为空位
+    private val table: Array<String?>
+
+    init {
+        var size = 8
+        while (size < texts.size * 2) size = size shl 1
+        table = arrayOfNulls(size)
+        for (t in texts) {
+            val i = slot(t, 0, t.length)
+            if (table[i] == null) table[i] = t
+        }
+    }
+
+    operator fun contains(text: CharSequence): Boolean = contains(text, 0, text.length)
+
+    /**
+     * text[start, end) 在集合中
+     */
+    fun contains(text: CharSequence, start: Int, end: Int): Boolean =
+        table[slot(text, start, end)] != null
+
+    // text[start, end) 所在或应插入的位置
+    private fun slot(text: CharSequence, start: Int, end: Int): Int {
+        val mask = table.size - 1
+        var h = 0
+        for (i in start until end) h = 31 * h + fold(text[i]).code
+        var i = (h * -0x61c88647 ushr 16) and mask
+        while (true) {
+            val t = table[i] ?: return i
+            if (regionEquals(t, text, start, end)) return i
+            i = (i + 1) and mask
+        }
+    }
+
+    private fun regionEquals(t: String, text: CharSequence, start: Int, end: Int): Boolean {
+        if (t.length != end - start) return false
+        for (i in t.indices) {
+            if (fold(t[i]) != fold(text[start + i])) return false
+        }
+        return true
+    }
+
+    private fun fold(c: Char): Char = if (ignoreCase) foldChar(c) else c
+
+    override fun toString() = "TextSet(${table.count { it != null }})"
+}
+
+/**
+ * 大小写折叠，与 Char.equals(ignoreCase = true) 一致：
+ * 忽略大小写相等的两个字符折叠后相等
+ */
+internal fun foldChar(c: Char): Char = when {
+    c < '\u0080' -> if (c in 'A'..'Z') c + 32 else c
+    else -> Character.toLowerCase(Character.toUpperCase(c))
+}
@@ -1,5 +1,6 @@
 package cn.vove7.auto.core.utils
 
+import cn.vove7.auto.core.viewnode.NodeIdentity
 import cn.vove7.auto.core.viewnode.ViewNode
 
 /**
@@ -15,7 +16,7 @@ class ViewChildList(val node: ViewNode?) : ArrayList<ViewNode?>(node?.childCount
         if (node != null) {
             addAll(
                 (0 until node.childCount).map { i ->
-                    node.node.getChild(i)?.let { ViewNode(it) }
+                    node.node.getChild(i)?.let { NodeIdentity.obtain(it) }
                 }
             )
         }
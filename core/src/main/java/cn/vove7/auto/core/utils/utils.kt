@@ -18,8 +18,6 @@ import kotlinx.coroutines.delay
 import kotlinx.coroutines.ensureActive
 import org.lsposed.hiddenapibypass.HiddenApiBypass
 import timber.log.Timber
-import java.util.Locale
-import kotlin.math.max
 
 /**
  * # utils
@@ -79,43 +77,12 @@ private fun Intent.putComponent(pkg: String, cls: Class<*>) {
     putExtra(":settings:show_fragment_args", bundle)
 }
 
-fun compareSimilarity(str1: String, str2: String, ignoreCase: Boolean = true): Float {
-    var s1 = str1
-    var s2 = str2
-    if (ignoreCase) {
-        s1 = str1.lowercase(Locale.getDefault())
-        s2 = str2.lowercase(Locale.getDefault())
-    }
-    // 计算两个字符串的长度
-    val len1 = s1.length
-    val len2 = s2.length
-    // 建立上面说的数组，比字符长度大一个空间
-    val dif = Array(len1 + 1) { IntArray(len2 + 1) }
-    // 赋初值，步骤B
-    for (a in 0..len1) {
-        dif[a][0] = a
-    }
-    for (a in 0..len2) {
-        dif[0][a] = a
-    }
-    // 计算两个字符是否一样，计算左上的值
-    var temp: Int
-    for (i in 1..len1) {
-        for (j in 1..len2) {
-            temp = if (s1[i - 1] == s2[j - 1]) {
-                0
-            } else {
-                1
-            }
-            // 取三个值中最小的
-            dif[i][j] = arrayOf(
-                dif[i - 1][j - 1] + temp, dif[i][j - 1] + 1,
-                dif[i - 1][j] + 1
-            ).minOrNull()!!
-        }
-    }
-    return 1 - dif[len1][len2].toFloat() / max(s1.length, s2.length)
-}
+/**
+ * 相似度：1 - 编辑距离 / 较长串长度，两串都为空时为 NaN
+ * 多次与同一字符串比较时使用 [FuzzyMatcher]
+ */
+fun compareSimilarity(str1: String, str2: String, ignoreCase: Boolean = true): Float =
+    FuzzyMatcher(str2, ignoreCase).similarity(str1)
 
 operator fun String.times(number: Int): String {
     return buildString {
@@ -0,0 +1,210 @@
+package cn.vove7.auto.core.viewfinder
+
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * # ConditionPlan
+ * [ConditionGroup] 编译后的求值计划
+ *
+ * 条件链按右结合展开：`a && b || c && d` 即 `a && (b || (c && d))`，
+ * 连续相同运算合并为一组，组内条件可交换，按期望开销排序，
+ * 开销及命中率来自 [ConditionStats]，统计不足时使用 [MatchCondition.cost] 估算。
+ * AND 中可剪枝的子项保持声明顺序并最先执行，其余子项再按开销排序，
+ * 剪枝结果与统计无关。
+ *
+ * 子树剪枝（interrupt）：
+ * - 叶子：不匹配且 canInterrupt
+ * - AND：导致失败的子项可剪枝
+ * - OR：全部失败且全部可剪枝
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+internal abstract class ConditionPlan {
+    // 单次求值期望耗时（纳秒）
+    abstract val cost: Double
+
+    // 估计命中率
+    abstract val passRate: Double
+
+    // 是否包含可剪枝条件，同开销时优先求值
+    abstract val canInterrupt: Boolean
+
+    abstract fun eval(node: NodeProps, interrupt: AtomicBoolean): Boolean
+
+    /**
+     * 由快照索引得到的候选节点（升序），无法使用索引时返回 null
+     */
+    open fun candidates(index: SnapshotIndex): IntArray? = null
+
+    class Leaf(val condition: MatchCondition) : ConditionPlan() {
+        private val stat = if (ConditionStats.enabled) ConditionStats.of(condition) else null
+
+        override val cost: Double =
+            stat?.avgNanos ?: (condition.cost * ConditionStats.COST_UNIT_NANOS)
+        override val passRate: Double = stat?.passRate ?: UNKNOWN_PASS_RATE
+        override val canInterrupt: Boolean = condition.canInterrupt
+
+        // 去掉包装后的条件
+        val core = unwrap(condition)
+
+        private val indexable = core as? IndexableCondition
+
+        override fun eval(node: NodeProps, interrupt: AtomicBoolean): Boolean {
+            interrupt.set(false)
+            val s = stat ?: return condition.match(node, interrupt)
+            return s.record { condition.match(node, interrupt) }
+        }
+
+        override fun candidates(index: SnapshotIndex): IntArray? = indexable?.candidates(index)
+
+        override fun toString() = condition.toString()
+    }
+
+    class And(val children: Array<ConditionPlan>) : ConditionPlan() {
+        override val cost: Double
+        override val passRate: Double
+
+        init {
+            // 只有前面全部通过才会执行后续条件
+            var reach = 1.0
+            var c = 0.0
+            for (child in children) {
+                c += reach * child.cost
+                reach *= child.passRate
+            }
+            cost = c
+            passRate = reach
+        }
+
+        override val canInterrupt: Boolean = children.any { it.canInterrupt }
+
+        override fun eval(node: NodeProps, interrupt: AtomicBoolean): Boolean {
+            for (c in children) {
+                if (!c.eval(node, interrupt)) return false
+            }
+            interrupt.set(false)
+            return true
+        }
+
+        // 可索引子项的交集
+        override fun candidates(index: SnapshotIndex): IntArray? {
+            var r: IntArray? = null
+            for (c in children) {
+                val cs = c.candidates(index) ?: continue
+                r = if (r == null) cs else SnapshotIndex.intersect(r, cs)
+                if (r.isEmpty()) break
+            }
+            return r
+        }
+
+        override fun toString() = children.joinToString(" && ", "(", ")")
+    }
+
+    class Or(val children: Array<ConditionPlan>) : ConditionPlan() {
+        override val cost: Double
+        override val passRate: Double
+
+        init {
+            // 只有前面全部失败才会执行后续条件
+            var reach = 1.0
+            var c = 0.0
+            for (child in children) {
+                c += reach * child.cost
+                reach *= 1 - child.passRate
+            }
+            cost = c
+            passRate = 1 - reach
+        }
+
+        override val canInterrupt: Boolean = children.all { it.canInterrupt }
+
+        override fun eval(node: NodeProps, interrupt: AtomicBoolean): Boolean {
+            var allInterrupt = true
+            for (c in children) {
+                if (c.eval(node, interrupt)) {
+                    interrupt.set(false)
+                    return true
+                }
+                allInterrupt = allInterrupt && interrupt.get()
+            }
+            interrupt.set(allInterrupt)
+            return false
+        }
+
+        // 全部子项可索引时取并集
+        override fun candidates(index: SnapshotIndex): IntArray? {
+            var r = SnapshotIndex.EMPTY
+            for (c in children) {
+                r = SnapshotIndex.union(r, c.candidates(index) ?: return null)
+            }
+            return r
+        }
+
+        override fun toString() = children.joinToString(" || ", "(", ")")
+    }
+
+    companion object {
+
+        private const val UNKNOWN_PASS_RATE = 0.5
+        private const val MIN_RATE = 1e-3
+
+        // AND 优先执行开销低、容易失败的条件
+        private val AND_ORDER = compareBy<ConditionPlan> {
+            it.cost / maxOf(1 - it.passRate, MIN_RATE)
+        }
+
+        // OR 优先执行开销低、容易成功的条件
+        private val OR_ORDER = compareBy<ConditionPlan> {
+            it.cost / maxOf(it.passRate, MIN_RATE)
+        }.thenBy { if (it.canInterrupt) 0 else 1 }
+
+        /**
+         * 编译条件组
+         * @throws IllegalArgumentException 无条件
+         * @throws IllegalStateException 第一个条件为 OR
+         */
+        fun compile(group: ConditionGroup): ConditionPlan {
+            val conditions = group.conditions.toList()
+            if (conditions.isEmpty()) {
+                throw IllegalArgumentException("SmartFinder has no conditions")
+            }
+            if (conditions.first().conditionType == ConditionType.OR) {
+                throw IllegalStateException("first condition type must be AND")
+            }
+            // 右结合折叠，同类运算合并
+            var plan = compileCondition(conditions.last())
+            for (i in conditions.size - 2 downTo 0) {
+                val left = compileCondition(conditions[i])
+                plan = if (conditions[i + 1].conditionType == ConditionType.OR) {
+                    if (plan is Or) Or(arrayOf(left, *plan.children)) else Or(arrayOf(left, plan))
+                } else {
+                    if (plan is And) And(arrayOf(left, *plan.children)) else And(arrayOf(left, plan))
+                }
+            }
+            return sort(plan)
+        }
+
+        private fun compileCondition(cond: MatchCondition): ConditionPlan {
+            val core = unwrap(cond)
+            return if (core is ConditionGroup) compile(core) else Leaf(cond)
+        }
+
+        // 去掉 ConditionNode / LambdaCondition 包装
+        private fun unwrap(cond: MatchCondition): MatchCondition = when (cond) {
+            is ConditionNode -> unwrap(cond.condition)
+            is LambdaCondition -> unwrap(cond.condition)
+            else -> cond
+        }
+
+        private fun sort(plan: ConditionPlan): ConditionPlan = when (plan) {
+            is And -> {
+                // 第一个失败的子项决定是否剪枝，可剪枝子项不参与排序
+                val (interruptible, others) = plan.children.map(::sort).partition { it.canInterrupt }
+                And((interruptible + others.sortedWith(AND_ORDER)).toTypedArray())
+            }
+            is Or -> Or(plan.children.map(::sort).sortedWith(OR_ORDER).toTypedArray())
+            else -> plan
+        }
+    }
+}
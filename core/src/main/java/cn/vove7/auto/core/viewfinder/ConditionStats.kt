@@ -0,0 +1,128 @@
+package cn.vove7.auto.core.viewfinder
+
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * # ConditionStats
+ * 条件运行统计：匹配次数、命中率、采样耗时
+ *
+ * [ConditionPlan] 编译时读取统计，按期望开销重新排序可交换的条件：
+ * - AND：耗时 / (1 - 命中率) 升序，越容易拒绝越先执行
+ * - OR：耗时 / 命中率 升序，越容易命中越先执行
+ *
+ * 以条件描述（toString）为 key，不同 finder 中相同条件共享统计，
+ * 统计只影响求值顺序及耗时，不影响匹配结果及剪枝 @see ConditionPlan
+ * 计数使用原子变量，可在多线程（如 parallelWindows）中同时搜索。
+ * 每次匹配都有计数开销，默认关闭 @see FinderConfig.FINDER_CONDITION_STATS
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+object ConditionStats {
+
+    val enabled: Boolean get() = FinderConfig.FINDER_CONDITION_STATS
+
+    // 每 16 次匹配计时一次
+    internal const val SAMPLE_MASK = 15L
+
+    // 统计不足时使用 MatchCondition.cost 估算
+    internal const val MIN_SAMPLES = 8L
+    internal const val MIN_EVALUATIONS = 64L
+
+    // MatchCondition.cost 一个单位折算的纳秒数
+    internal const val COST_UNIT_NANOS = 100.0
+
+    private const val MAX_ENTRIES = 512
+
+    private val stats = object : LinkedHashMap<String, Stat>(64, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Stat>?) =
+            size > MAX_ENTRIES
+    }
+
+    internal fun of(cond: MatchCondition): Stat {
+        val name = cond.toString()
+        val key = cond.javaClass.name + "|" + name
+        return synchronized(stats) {
+            stats.getOrPut(key) { Stat(name) }
+        }
+    }
+
+    /**
+     * 当前统计，按估算总耗时降序
+     */
+    fun snapshot(): List<ConditionStat> = synchronized(stats) {
+        stats.values.map {
+            ConditionStat(
+                it.name, it.evaluations.get(), it.hits.get(),
+                it.sampledNanos.get(), it.samples.get()
+            )
+        }
+    }.sortedByDescending { it.estimatedTotalNanos }
+
+    fun reset() {
+        synchronized(stats) { stats.clear() }
+    }
+
+    fun dump(): String = snapshot().joinToString("\n")
+
+    internal class Stat(val name: String) {
+        val evaluations = AtomicLong()
+        val hits = AtomicLong()
+        val sampledNanos = AtomicLong()
+        val samples = AtomicLong()
+
+        // 平均耗时（纳秒），样本不足为 null
+        val avgNanos: Double?
+            get() {
+                val n = samples.get()
+                return if (n >= MIN_SAMPLES) sampledNanos.get().toDouble() / n else null
+            }
+
+        // 命中率，样本不足为 null
+        val passRate: Double?
+            get() {
+                val n = evaluations.get()
+                return if (n >= MIN_EVALUATIONS) hits.get().toDouble() / n else null
+            }
+
+        inline fun record(m: () -> Boolean): Boolean {
+            val timed = evaluations.getAndIncrement() and SAMPLE_MASK == 0L
+            val r = if (timed) {
+                val t = System.nanoTime()
+                m().also {
+                    sampledNanos.addAndGet(System.nanoTime() - t)
+                    samples.incrementAndGet()
+                }
+            } else m()
+            if (r) hits.incrementAndGet()
+            return r
+        }
+    }
+}
+
+/**
+ * 单个条件的统计
+ * @property name 条件描述
+ * @property evaluations 匹配次数
+ * @property hits 匹配成功次数
+ */
+class ConditionStat(
+    val name: String,
+    val evaluations: Long,
+    val hits: Long,
+    private val sampledNanos: Long,
+    private val samples: Long,
+) {
+    val passRate: Double get() = if (evaluations == 0L) 0.0 else hits.toDouble() / evaluations
+
+    val avgNanos: Double get() = if (samples == 0L) 0.0 else sampledNanos.toDouble() / samples
+
+    // 按采样平均耗时估算的总耗时
+    val estimatedTotalNanos: Double get() = avgNanos * evaluations
+
+    override fun toString(): String {
+        return "ConditionStat($name, evaluations=$evaluations, " +
+                "passRate=${"%.3f".format(passRate)}, avg=${"%.0f".format(avgNanos)}ns, " +
+                "total≈${"%.2f".format(estimatedTotalNanos / 1e6)}ms)"
+    }
+}
@@ -0,0 +1,208 @@
+package cn.vove7.auto.core.viewfinder
+
+import cn.vove7.auto.core.utils.ensureNotInterrupt
+import cn.vove7.auto.core.viewnode.ViewNode
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * # FinderBatch
+ * 一次遍历同时执行多个 finder
+ *
+ * 每个节点只读取一次属性（[LiveNodeProps] 或快照游标），依次交给各 finder 匹配；
+ * 各 finder 独立剪枝，全部 finder 都跳过的子树不再获取。
+ * 结果与各 finder 单独从 [root] 深度优先搜索一致。
+ *
+ * 用法：
+ * ```kotlin
+ * val batch = FinderBatch(SF.text("允许"), SF.id("btn_ok"), SF.desc("关闭"))
+ * val exists = batch.exist()
+ * val hit = batch.firstMatch()  // 页面分类：最先匹配的 finder
+ * ```
+ *
+ * 实时节点由 [NodeWalker] 深度优先遍历；finder 设置了起始节点、windowFilter、rootCompat、
+ * 非 DFS 遍历策略或 maxDepth / maxNodes，或 includeInvisible / useSnapshot 与 batch 不同时
+ * 无法与单独搜索保持一致，搜索时抛出 IllegalArgumentException
+ *
+ * @param root 起始节点，默认为全部窗口
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+class FinderBatch(
+    val finders: List<ViewFinder<*>>,
+    private val root: ViewNode? = null,
+) {
+    constructor(vararg finders: ViewFinder<*>) : this(finders.toList())
+
+    private var includeInvisible: Boolean = FinderConfig.FINDER_INCLUDE_INVISIBLE
+
+    private var useSnapshot: Boolean = FinderConfig.FINDER_USE_SNAPSHOT
+
+    fun includeInvisible(ii: Boolean = true) = apply { includeInvisible = ii }
+
+    fun useSnapshot(b: Boolean = true) = apply { useSnapshot = b }
+
+    /**
+     * 每个 finder 的第一个匹配，全部找到后立即结束遍历
+     * @return 与 [finders] 顺序一致
+     */
+    suspend fun findFirst(): List<ViewNode?> {
+        val ctx = currentCoroutineContext()
+        return findFirst { ctx.ensureActive() }
+    }
+
+    fun findFirstBlocking(): List<ViewNode?> = findFirst(::ensureNotInterrupt)
+
+    suspend fun exist(): List<Boolean> = findFirst().map { it != null }
+
+    fun existBlocking(): List<Boolean> = findFirstBlocking().map { it != null }
+
+    /**
+     * 每个 finder 的全部匹配
+     */
+    suspend fun findAll(): List<List<ViewNode>> {
+        val ctx = currentCoroutineContext()
+        return findAll { ctx.ensureActive() }
+    }
+
+    fun findAllBlocking(): List<List<ViewNode>> = findAll(::ensureNotInterrupt)
+
+    /**
+     * 遍历中最先匹配的节点及其 finder，用于页面分类
+     * 同一节点被多个 finder 匹配时，取 [finders] 中靠前的
+     */
+    suspend fun firstMatch(): BatchMatch? {
+        val ctx = currentCoroutineContext()
+        return firstMatch { ctx.ensureActive() }
+    }
+
+    fun firstMatchBlocking(): BatchMatch? = firstMatch(::ensureNotInterrupt)
+
+    private fun findFirst(check: () -> Unit): List<ViewNode?> {
+        val result = arrayOfNulls<ViewNode>(finders.size)
+        var remain = finders.size
+        run(check, done = { result[it] != null }) { k, node ->
+            result[k] = node
+            --remain == 0
+        }
+        return result.toList()
+    }
+
+    private fun findAll(check: () -> Unit): List<List<ViewNode>> {
+        val result = List(finders.size) { mutableListOf<ViewNode>() }
+        run(check, done = { false }) { k, node ->
+            result[k].add(node)
+            false
+        }
+        return result
+    }
+
+    private fun firstMatch(check: () -> Unit): BatchMatch? {
+        var hit: BatchMatch? = null
+        run(check, done = { false }) { k, node ->
+            hit = BatchMatch(k, finders[k], node)
+            true
+        }
+        return hit
+    }
+
+    /**
+     * @param done finder 已完成，不再匹配
+     * @param onMatch 返回 true 结束遍历
+     */
+    private fun run(
+        check: () -> Unit,
+        done: (Int) -> Boolean,
+        onMatch: (Int, ViewNode) -> Boolean
+    ) {
+        if (finders.isEmpty()) return
+        finders.forEachIndexed { k, f ->
+            f.batchUnsupported(includeInvisible, useSnapshot)?.let {
+                throw IllegalArgumentException(
+                    "FinderBatch does not support $it of finders[$k]: ${f.finderInfo()}"
+                )
+            }
+        }
+        finders.forEach { it.prepareTraverse() }
+        val start = root ?: ViewNode.getRoot()
+        val n = finders.size
+        // 各 finder 被剪枝的节点深度，离开该子树后恢复
+        val prunedAt = IntArray(n) { NOT_PRUNED }
+
+        if (useSnapshot) {
+            val interrupt = AtomicBoolean(false)
+            val snapshot = if (start.isWindowsRoot && HierarchyCache.enabled) {
+                HierarchyCache.obtain(includeInvisible, check)
+            } else TreeSnapshot.capture(start, includeInvisible, check)
+            val cursor = snapshot.cursor()
+            var i = 1
+            while (i < snapshot.size) {
+                check()
+                cursor.index = i
+                val depth = snapshot.depth(i)
+                var descend = false
+                for (k in 0 until n) {
+                    if (prunedAt[k] != NOT_PRUNED && depth <= prunedAt[k]) prunedAt[k] = NOT_PRUNED
+                    if (prunedAt[k] != NOT_PRUNED || done(k)) continue
+                    interrupt.set(false)
+                    val matched = finders[k].findCondition(cursor, interrupt)
+                    if (matched && onMatch(k, snapshot.viewNodeAt(i))) return
+                    if (!matched && interrupt.get()) prunedAt[k] = depth
+                    else descend = true
+                }
+                i = if (descend) i + 1 else snapshot.subtreeEnd(i)
+            }
+            return
+        }
+
+        // 当前节点匹配的 finder 下标，升序
+        val matched = IntArray(n)
+        var matchCount = 0
+        // 全部 finder 都剪枝时跳过子树
+        val matcher = WalkMatcher { props, depth, interrupt ->
+            matchCount = 0
+            var descend = false
+            for (k in 0 until n) {
+                if (prunedAt[k] != NOT_PRUNED && depth <= prunedAt[k]) prunedAt[k] = NOT_PRUNED
+                if (prunedAt[k] != NOT_PRUNED || done(k)) continue
+                interrupt.set(false)
+                if (finders[k].findCondition(props, interrupt)) {
+                    matched[matchCount++] = k
+                    descend = true
+                } else if (interrupt.get()) {
+                    prunedAt[k] = depth
+                } else descend = true
+            }
+            interrupt.set(!descend)
+            matchCount > 0
+        }
+        val walker = NodeWalker(
+            matcher, TraverseStrategy.DFS, includeInvisible,
+            TraverseBudget(Int.MAX_VALUE, Int.MAX_VALUE), check
+        ).start(start, 0)
+        while (true) {
+            val node = walker.nextMatch() ?: return
+            for (m in 0 until matchCount) {
+                if (onMatch(matched[m], node)) return
+            }
+        }
+    }
+
+    private companion object {
+        const val NOT_PRUNED = Int.MAX_VALUE
+    }
+}
+
+/**
+ * [FinderBatch.firstMatch] 结果
+ * @property index finder 在 [FinderBatch.finders] 中的位置
+ */
+class BatchMatch(
+    val index: Int,
+    val finder: ViewFinder<*>,
+    val node: ViewNode,
+) {
+    override fun toString() = "BatchMatch(index=$index, node=$node)"
+}
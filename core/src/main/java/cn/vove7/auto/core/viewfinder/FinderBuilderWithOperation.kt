@@ -5,7 +5,6 @@ import androidx.annotation.RequiresApi
 import androidx.core.view.accessibility.AccessibilityNodeInfoCompat
 import cn.vove7.auto.core.viewnode.ViewNode
 import cn.vove7.auto.core.viewnode.ViewOperation
-import kotlinx.coroutines.runBlocking
 
 /**
  * # FindBuilderWithOperation
@@ -18,7 +17,8 @@ interface FinderBuilderWithOperation : ViewOperation {
 
     val finder: ViewFinder<*>
 
-    private val node get() = runBlocking { finder.require() }
+    // 绑定模式下复用节点 @see ViewFinder.bind
+    private val node get() = finder.boundBlocking()
 
     override val id get() = node.id
     override val className get() = node.className
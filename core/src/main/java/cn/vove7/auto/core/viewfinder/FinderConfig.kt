@@ -10,12 +10,75 @@ object FinderConfig {
     var FINDER_WAIT_MILLIS = 3000L
     var FINDER_WAIT_INTERVAL = 20L
 
+    // waitFor/waitHide wake up on accessibility content events instead of polling
+    var FINDER_WAIT_BY_EVENT = false
+
+    // Fallback poll interval of event driven waiting
+    var FINDER_WAIT_FALLBACK_INTERVAL = 500L
+
+    // Called after each waitFor/waitHide
+    var onWaitStats: ((ViewFinder<*>, WaitStats) -> Unit)? = null
+
     // Global default includeInvisible
     var FINDER_INCLUDE_INVISIBLE = false
 
     // @see ViewFinder.rootCompat
     var FINDER_ROOT_COMPAT = false
 
+    // Skip windows by top-level PackageCondition / DisplayIdCondition, @see WindowFilter
+    // Off by default: windows whose nodes report another package than the root would be skipped
+    var FINDER_DERIVE_WINDOW_FILTER = false
+
+    // Search windows concurrently from root, @see ViewFinder.parallelWindows
+    var FINDER_PARALLEL_WINDOWS = false
+
+    // Max concurrent window searches, read once on first parallel search
+    var FINDER_WINDOW_PARALLELISM = 4
+
+    // Default traversal strategy and budgets, @see TraverseStrategy
+    var FINDER_TRAVERSE_STRATEGY = TraverseStrategy.DFS
+    var FINDER_MAX_DEPTH = Int.MAX_VALUE
+    var FINDER_MAX_NODES = Int.MAX_VALUE
+
+    // Global default snapshot mode, @see TreeSnapshot
+    var FINDER_USE_SNAPSHOT = false
+
+    // Reuse snapshots between finds, invalidated by accessibility events, @see HierarchyCache
+    var FINDER_HIERARCHY_CACHE = false
+
+    // Answer indexable conditions (id, text, desc, className, package) from SnapshotIndex
+    var FINDER_SNAPSHOT_INDEX = true
+
+    // Collect condition hit rates and timings to reorder ConditionGroup, @see ConditionStats
+    var FINDER_CONDITION_STATS = false
+
+    // Max parsed selectors kept by Selector, @see Selector.compile
+    var FINDER_SELECTOR_CACHE_SIZE = 128
+
+    // Max nodes HasDescendantCondition checks under a live node
+    var FINDER_DESCENDANT_MAX_NODES = 500
+
+    // Grid cell size in px of SpatialIndex
+    var FINDER_SPATIAL_CELL_SIZE = 128
+
+    // Global default result cache, requires content events, @see ResultCache
+    var FINDER_RESULT_CACHE = false
+
+    // Max cached results kept by ResultCache
+    var FINDER_RESULT_CACHE_SIZE = 64
+
+    // Max age in ms of a cached result even without content events
+    var FINDER_RESULT_CACHE_TTL = 1000L
+
+    // Operations on a finder search once and reuse the node, @see ViewFinder.bind
+    var FINDER_BIND_NODE = false
+
+    // Memoize ViewNode bounds and toString until refresh() or a content event, requires content events
+    var NODE_PROPERTY_CACHE = false
+
+    // One ViewNode per on-screen node within a view version, requires content events, @see NodeIdentity
+    var NODE_IDENTITY = false
+
     // ViewNode.performAction number of attempts
     var TRY_OP_CNT = 10
 
@@ -0,0 +1,164 @@
+package cn.vove7.auto.core.viewfinder
+
+import android.view.accessibility.AccessibilityEvent
+import android.view.accessibility.AccessibilityNodeInfo
+import cn.vove7.auto.core.AccessibilityEvents
+import cn.vove7.auto.core.viewnode.ViewNode
+import timber.log.Timber
+
+/**
+ * # HierarchyCache
+ * 由无障碍事件驱动的视图树缓存
+ *
+ * 缓存全部窗口的 [TreeSnapshot]，根据事件来源节点和 contentChangeTypes
+ * 只重新捕获变化的子树，其余部分直接复用。
+ *
+ * 事件来源：[cn.vove7.auto.core.PageUpdateMonitor.onAccessibilityEvent]
+ * 需要服务订阅 [EVENT_TYPES] 中的事件类型
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+object HierarchyCache {
+
+    /**
+     * 缓存需要的事件类型
+     */
+    const val EVENT_TYPES = AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED or
+            AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED or
+            AccessibilityEvent.TYPE_WINDOWS_CHANGED or
+            AccessibilityEvent.TYPE_VIEW_SCROLLED or
+            AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED or
+            AccessibilityEvent.TYPE_VIEW_SELECTED or
+            AccessibilityEvent.TYPE_VIEW_FOCUSED
+
+    // 仅影响节点自身属性的变化类型
+    private const val NODE_ONLY_CHANGE_TYPES =
+        AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT or
+                AccessibilityEvent.CONTENT_CHANGE_TYPE_CONTENT_DESCRIPTION or
+                AccessibilityEvent.CONTENT_CHANGE_TYPE_STATE_DESCRIPTION
+
+    // 待处理变化过多时直接完整捕获
+    private const val MAX_PENDING = 64
+
+    val enabled: Boolean get() = FinderConfig.FINDER_HIERARCHY_CACHE
+
+    /**
+     * 视图树版本号，同 [AccessibilityEvents.contentVersion]
+     */
+    val generation: Long get() = AccessibilityEvents.contentVersion.value
+
+    private val lock = Any()
+
+    // includeInvisible -> snapshot
+    private val snapshots = arrayOfNulls<TreeSnapshot>(2)
+    private val fullInvalid = booleanArrayOf(true, true)
+    private val dirtySubtrees = listOf(LinkedHashSet<AccessibilityNodeInfo>(), LinkedHashSet())
+    private val dirtyNodes = listOf(LinkedHashSet<AccessibilityNodeInfo>(), LinkedHashSet())
+
+    fun onAccessibilityEvent(event: AccessibilityEvent) {
+        if (!enabled) return
+        when (event.eventType) {
+            AccessibilityEvent.TYPE_WINDOWS_CHANGED,
+            AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED -> invalidateAll()
+
+            AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED -> {
+                val types = event.contentChangeTypes
+                val nodeOnly = types != 0 && (types and NODE_ONLY_CHANGE_TYPES.inv()) == 0
+                invalidate(event, nodeOnly)
+            }
+
+            AccessibilityEvent.TYPE_VIEW_SCROLLED -> invalidate(event, false)
+
+            AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED,
+            AccessibilityEvent.TYPE_VIEW_SELECTED,
+            AccessibilityEvent.TYPE_VIEW_FOCUSED -> invalidate(event, true)
+
+            else -> return
+        }
+    }
+
+    fun invalidateAll() {
+        synchronized(lock) {
+            for (i in 0..1) {
+                fullInvalid[i] = true
+                dirtySubtrees[i].clear()
+                dirtyNodes[i].clear()
+            }
+        }
+    }
+
+    /**
+     * 两份快照均已完整失效时直接返回，不再读取 event.source（跨进程调用）
+     * @param event 变化事件，source 为 null 时完整失效
+     * @param nodeOnly 是否只有节点自身属性变化
+     */
+    private fun invalidate(event: AccessibilityEvent, nodeOnly: Boolean) {
+        if (synchronized(lock) { fullInvalid[0] && fullInvalid[1] }) return
+        val source = event.source ?: return invalidateAll()
+        synchronized(lock) {
+            for (i in 0..1) {
+                if (fullInvalid[i]) continue
+                val set = if (nodeOnly) dirtyNodes[i] else dirtySubtrees[i]
+                set.add(source)
+                if (dirtySubtrees[i].size + dirtyNodes[i].size > MAX_PENDING) {
+                    fullInvalid[i] = true
+                    dirtySubtrees[i].clear()
+                    dirtyNodes[i].clear()
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取全部窗口的最新快照
+     * 无变化时直接返回缓存；捕获过程不持有锁，不阻塞事件回调
+     */
+    fun obtain(includeInvisible: Boolean, check: () -> Unit = {}): TreeSnapshot {
+        val k = if (includeInvisible) 1 else 0
+        val old: TreeSnapshot?
+        val full: Boolean
+        val subtrees: List<AccessibilityNodeInfo>
+        val nodes: List<AccessibilityNodeInfo>
+        synchronized(lock) {
+            old = snapshots[k]
+            full = old == null || fullInvalid[k]
+            if (old != null && !full && dirtySubtrees[k].isEmpty() && dirtyNodes[k].isEmpty()) {
+                return old
+            }
+            subtrees = dirtySubtrees[k].toList()
+            nodes = dirtyNodes[k].toList()
+            fullInvalid[k] = false
+            dirtySubtrees[k].clear()
+            dirtyNodes[k].clear()
+        }
+        val snapshot = try {
+            if (full || old == null) {
+                TreeSnapshot.capture(ViewNode.getRoot(), includeInvisible, check)
+            } else {
+                old.update(subtrees, nodes, check).also {
+                    if (FinderConfig.DEBUG_LOG) {
+                        Timber.d(
+                            "HierarchyCache update subtrees: ${subtrees.size}, " +
+                                    "nodes: ${nodes.size}, patched: ${it != null}"
+                        )
+                    }
+                } ?: TreeSnapshot.capture(ViewNode.getRoot(), includeInvisible, check)
+            }
+        } catch (e: Throwable) {
+            synchronized(lock) { fullInvalid[k] = true }
+            throw e
+        }
+        synchronized(lock) {
+            snapshots[k] = snapshot
+        }
+        return snapshot
+    }
+
+    fun clear() {
+        synchronized(lock) {
+            snapshots.fill(null)
+        }
+        invalidateAll()
+    }
+}
@@ -0,0 +1,108 @@
+package cn.vove7.auto.core.viewfinder
+
+import cn.vove7.auto.core.viewnode.NodeIdentity
+import cn.vove7.auto.core.viewnode.ViewNode
+
+/**
+ * # NodeKey
+ * 跨快照稳定的节点键，用于在多次捕获间追踪同一个节点
+ *
+ * - 优先使用 windowId + sourceNodeId：View 的无障碍 id，重新捕获、refresh 后不变
+ * - sourceNodeId 不可用时使用结构路径：从窗口根节点起每层的 `className[位置]#id`，
+ *   快照中位置按已捕获的兄弟节点计算，不含不可见节点时可能与实时计算不同
+ *
+ * 快照中按键查找为 O(1) @see TreeSnapshot.indexOfKey
+ * 可通过 [toString] / [parse] 保存为字符串
+ *
+ * 列表项被复用（如 RecyclerView）时，同一个键之后可能对应不同内容
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+class NodeKey private constructor(
+    val windowId: Int,
+    val sourceId: Long,
+    // 结构路径，使用 sourceId 时为 null
+    val path: String?,
+) {
+    val isStructural: Boolean get() = path != null
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is NodeKey) return false
+        return windowId == other.windowId && sourceId == other.sourceId && path == other.path
+    }
+
+    override fun hashCode(): Int {
+        var h = windowId
+        h = 31 * h + (sourceId xor (sourceId ushr 32)).toInt()
+        h = 31 * h + (path?.hashCode() ?: 0)
+        return h
+    }
+
+    /**
+     * `w<windowId>:<sourceId hex>` 或 `w<windowId>:/<path>`
+     */
+    override fun toString() = if (path == null) {
+        "w$windowId:${java.lang.Long.toHexString(sourceId)}"
+    } else "w$windowId:/$path"
+
+    companion object {
+
+        fun of(node: ViewNode): NodeKey = of(LiveNodeProps(node.node))
+
+        /**
+         * 无上下文的实时节点使用结构路径时，需逐层获取父节点
+         */
+        fun of(props: NodeProps): NodeKey {
+            val info = props.acsNode
+            val sid = NodeIdentity.sourceNodeId(info.unwrap())
+            if (sid != null) return NodeKey(info.windowId, sid, null)
+            return structural(info.windowId, pathOf(props))
+        }
+
+        /**
+         * @throws IllegalArgumentException 格式错误
+         */
+        fun parse(s: String): NodeKey {
+            val colon = s.indexOf(':')
+            require(s.startsWith("w") && colon > 1) { "invalid NodeKey: $s" }
+            val wid = s.substring(1, colon).toIntOrNull()
+                ?: throw IllegalArgumentException("invalid NodeKey: $s")
+            val rest = s.substring(colon + 1)
+            if (rest.startsWith("/")) return structural(wid, rest.substring(1))
+            val sid = rest.toULongOrNull(16)?.toLong()
+                ?: throw IllegalArgumentException("invalid NodeKey: $s")
+            return NodeKey(wid, sid, null)
+        }
+
+        internal fun of(windowId: Int, sourceId: Long) = NodeKey(windowId, sourceId, null)
+
+        internal fun structural(windowId: Int, path: String) = NodeKey(windowId, 0, path)
+
+        /**
+         * 路径中的一层，窗口根节点 [index] 为 -1
+         */
+        internal fun segment(className: CharSequence?, index: Int, viewId: String?): String =
+            buildString {
+                append(className ?: "")
+                if (index >= 0) append('[').append(index).append(']')
+                if (viewId != null) append('#').append(viewId, viewId.lastIndexOf('/') + 1, viewId.length)
+            }
+
+        // 多窗口根节点（ViewNode.withChildren）不是真实节点，与快照一致，其子节点视为无父节点
+        internal fun pathOf(props: NodeProps): String {
+            val segments = ArrayList<String>()
+            var p: NodeProps? = props
+            while (p != null) {
+                val parent = p.parent?.takeUnless { isWindowsRoot(it) }
+                segments += segment(p.className, if (parent == null) -1 else p.indexInParent, p.viewId)
+                p = parent
+            }
+            return segments.asReversed().joinToString("/")
+        }
+
+        private fun isWindowsRoot(props: NodeProps): Boolean =
+            props.className?.startsWith(ViewNode.ROOT_TAG) == true
+    }
+}
@@ -0,0 +1,424 @@
+package cn.vove7.auto.core.viewfinder
+
+import android.graphics.Rect
+import android.os.Build
+import android.view.accessibility.AccessibilityNodeInfo
+import cn.vove7.auto.core.viewnode.NodeIdentity
+import cn.vove7.auto.core.viewnode.ViewNode
+
+/**
+ * # NodeProps
+ * 条件匹配时使用的只读节点属性
+ *
+ * 实现：
+ * 1. [LiveNodeProps] 直接读取 [AcsNode]
+ * 2. [TreeSnapshot.Cursor] 读取快照数据，不产生 IPC
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+interface NodeProps {
+
+    // 原始节点，快照模式下为捕获时的节点
+    val acsNode: AcsNode
+
+    val text: CharSequence?
+    val desc: CharSequence?
+    val className: CharSequence?
+    val viewId: String?
+    val packageName: CharSequence?
+
+    val childCount: Int
+
+    // 所在窗口 displayId，未知为 -1
+    val displayId: Int
+
+    fun flag(flag: Int): Boolean
+
+    fun getBounds(out: Rect)
+
+    // 结构上下文：遍历引擎（DFS / 迭代加深 / 快照）提供时从内存读取，否则实时获取
+
+    // 父节点，多窗口根节点之上为 null
+    val parent: NodeProps?
+
+    // 在父节点可搜索子节点中的位置，从 0 开始，未知为 -1
+    val indexInParent: Int
+
+    /**
+     * 依次访问可搜索的子节点，[predicate] 返回 true 时停止
+     * 传入的 NodeProps 会被复用，不可保存
+     * @return 是否有子节点满足 [predicate]
+     */
+    fun anyChild(predicate: (NodeProps) -> Boolean): Boolean
+
+    /**
+     * 先序访问子孙节点
+     * @param maxDepth 最大相对深度，子节点为 1
+     * @param maxNodes 最多访问的节点数
+     */
+    fun anyDescendant(maxDepth: Int, maxNodes: Int, predicate: (NodeProps) -> Boolean): Boolean
+
+    companion object {
+        const val FLAG_VISIBLE = 1
+        const val FLAG_CLICKABLE = 1 shl 1
+        const val FLAG_LONG_CLICKABLE = 1 shl 2
+        const val FLAG_CHECKABLE = 1 shl 3
+        const val FLAG_CHECKED = 1 shl 4
+        const val FLAG_EDITABLE = 1 shl 5
+        const val FLAG_ENABLED = 1 shl 6
+        const val FLAG_FOCUSABLE = 1 shl 7
+        const val FLAG_FOCUSED = 1 shl 8
+        const val FLAG_SCROLLABLE = 1 shl 9
+        const val FLAG_SELECTED = 1 shl 10
+        const val FLAG_DISMISSABLE = 1 shl 11
+
+        fun flagsOf(node: AcsNode): Int {
+            var f = 0
+            if (node.isVisibleToUser) f = f or FLAG_VISIBLE
+            if (node.isClickable) f = f or FLAG_CLICKABLE
+            if (node.isLongClickable) f = f or FLAG_LONG_CLICKABLE
+            if (node.isCheckable) f = f or FLAG_CHECKABLE
+            if (node.checked == 1) f = f or FLAG_CHECKED
+            if (node.isEditable) f = f or FLAG_EDITABLE
+            if (node.isEnabled) f = f or FLAG_ENABLED
+            if (node.isFocusable) f = f or FLAG_FOCUSABLE
+            if (node.isFocused) f = f or FLAG_FOCUSED
+            if (node.isScrollable) f = f or FLAG_SCROLLABLE
+            if (node.isSelected) f = f or FLAG_SELECTED
+            if (node.isDismissable) f = f or FLAG_DISMISSABLE
+            return f
+        }
+
+        /**
+         * 同 [flagsOf]，直接读取 [info]，不创建 AcsNode 包装
+         */
+        fun flagsOf(info: AccessibilityNodeInfo): Int {
+            var f = 0
+            if (info.isVisibleToUser) f = f or FLAG_VISIBLE
+            if (info.isClickable) f = f or FLAG_CLICKABLE
+            if (info.isLongClickable) f = f or FLAG_LONG_CLICKABLE
+            if (info.isCheckable) f = f or FLAG_CHECKABLE
+            if (isChecked(info)) f = f or FLAG_CHECKED
+            if (info.isEditable) f = f or FLAG_EDITABLE
+            if (info.isEnabled) f = f or FLAG_ENABLED
+            if (info.isFocusable) f = f or FLAG_FOCUSABLE
+            if (info.isFocused) f = f or FLAG_FOCUSED
+            if (info.isScrollable) f = f or FLAG_SCROLLABLE
+            if (info.isSelected) f = f or FLAG_SELECTED
+            if (info.isDismissable) f = f or FLAG_DISMISSABLE
+            return f
+        }
+
+        // 与 AcsNode.checked == CHECKED_STATE_TRUE 一致
+        private fun isChecked(info: AccessibilityNodeInfo): Boolean =
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.BAKLAVA) {
+                info.checked == AccessibilityNodeInfo.CHECKED_STATE_TRUE
+            } else {
+                @Suppress("DEPRECATION")
+                info.isChecked
+            }
+    }
+}
+
+/**
+ * 实时节点属性
+ * 遍历时复用同一实例，通过 [node] 切换当前节点
+ * 每个属性对同一节点只读取一次，字符串只 toString 一次
+ *
+ * 由 [PropsStack] 绑定遍历上下文后，父节点为遍历路径上的上一层实例，
+ * 子节点取自 [ViewNode.children] 缓存，与遍历共用
+ */
+class LiveNodeProps(node: AcsNode? = null) : NodeProps {
+
+    private var _node: AcsNode? = node
+
+    var node: AcsNode
+        get() = _node ?: throw IllegalStateException("LiveNodeProps node not set")
+        set(value) {
+            _node = value
+            loaded = 0
+            owner = null
+            parentBound = false
+            ctxParent = null
+        }
+
+    // 遍历上下文
+    private var owner: ViewNode? = null
+    private var parentBound = false
+    private var ctxParent: LiveNodeProps? = null
+    private var ctxIndex = -1
+    private var includeInvisible = true
+
+    private var _parent: NodeProps? = null
+    private var _index = -1
+
+    // 已读取属性位
+    private var loaded = 0
+
+    // 不转换为 String，条件直接在 CharSequence 上比较
+    private var _text: CharSequence? = null
+    private var _desc: CharSequence? = null
+    private var _className: CharSequence? = null
+    private var _viewId: String? = null
+    private var _packageName: CharSequence? = null
+    private var _childCount = 0
+    private var _displayId = -1
+    private var _flags = 0
+    private val _bounds = Rect()
+
+    override val acsNode: AcsNode get() = node
+
+    override val text: CharSequence?
+        get() {
+            if (loaded and L_TEXT == 0) {
+                _text = node.text
+                loaded = loaded or L_TEXT
+            }
+            return _text
+        }
+
+    override val desc: CharSequence?
+        get() {
+            if (loaded and L_DESC == 0) {
+                _desc = node.contentDescription
+                loaded = loaded or L_DESC
+            }
+            return _desc
+        }
+
+    override val className: CharSequence?
+        get() {
+            if (loaded and L_CLASS == 0) {
+                _className = node.className
+                loaded = loaded or L_CLASS
+            }
+            return _className
+        }
+
+    override val viewId: String?
+        get() {
+            if (loaded and L_ID == 0) {
+                _viewId = node.viewIdResourceName
+                loaded = loaded or L_ID
+            }
+            return _viewId
+        }
+
+    override val packageName: CharSequence?
+        get() {
+            if (loaded and L_PKG == 0) {
+                _packageName = node.packageName
+                loaded = loaded or L_PKG
+            }
+            return _packageName
+        }
+
+    override val childCount: Int
+        get() {
+            if (loaded and L_CHILD_COUNT == 0) {
+                _childCount = node.childCount
+                loaded = loaded or L_CHILD_COUNT
+            }
+            return _childCount
+        }
+
+    // window 需要 IPC
+    override val displayId: Int
+        get() {
+            if (loaded and L_DISPLAY == 0) {
+                _displayId = node.window?.displayId ?: -1
+                loaded = loaded or L_DISPLAY
+            }
+            return _displayId
+        }
+
+    override fun flag(flag: Int): Boolean {
+        if (loaded and L_FLAGS == 0) {
+            _flags = NodeProps.flagsOf(node)
+            loaded = loaded or L_FLAGS
+        }
+        return _flags and flag == flag
+    }
+
+    override fun getBounds(out: Rect) {
+        if (loaded and L_BOUNDS == 0) {
+            node.getBoundsInScreen(_bounds)
+            loaded = loaded or L_BOUNDS
+        }
+        out.set(_bounds)
+    }
+
+    /**
+     * 绑定子节点来源，设置 [node] 后调用
+     * @param includeInvisible 为 false 时子节点遍历跳过不可见节点
+     */
+    internal fun attach(vn: ViewNode, includeInvisible: Boolean) {
+        owner = vn
+        this.includeInvisible = includeInvisible
+    }
+
+    // 绑定父节点，null 表示无父节点
+    internal fun attachParent(parent: LiveNodeProps?, index: Int) {
+        parentBound = true
+        ctxParent = parent
+        ctxIndex = index
+    }
+
+    override val parent: NodeProps?
+        get() {
+            if (parentBound) return ctxParent
+            if (loaded and L_PARENT == 0) {
+                _parent = node.parent?.let { LiveNodeProps(it) }
+                loaded = loaded or L_PARENT
+            }
+            return _parent
+        }
+
+    // 无上下文时按父节点的可搜索子节点计算，O(兄弟节点数) 次 IPC
+    override val indexInParent: Int
+        get() {
+            if (parentBound) return ctxIndex
+            if (loaded and L_INDEX == 0) {
+                _index = -1
+                val p = parent?.acsNode
+                if (p != null) {
+                    var i = 0
+                    for (k in 0 until p.childCount) {
+                        val c = getChild(p, k) ?: continue
+                        if (c == node) {
+                            _index = i
+                            break
+                        }
+                        if (searchable(c)) i++
+                    }
+                }
+                loaded = loaded or L_INDEX
+            }
+            return _index
+        }
+
+    // 有无 ViewNode 上下文时子节点及位置的计算方式相同，与快照一致
+    override fun anyChild(predicate: (NodeProps) -> Boolean): Boolean {
+        val props = LiveNodeProps()
+        var i = 0
+        val vn = owner
+        if (vn == null) {
+            val n = node
+            for (k in 0 until n.childCount) {
+                val c = getChild(n, k) ?: continue
+                if (!searchable(c)) continue
+                props.node = c
+                props.includeInvisible = includeInvisible
+                props.attachParent(this, i++)
+                if (predicate(props)) return true
+            }
+            return false
+        }
+        for (c in vn.children) {
+            c ?: continue
+            if (!includeInvisible && !c.isVisibleToUser) continue
+            props.node = c.node
+            props.attach(c, includeInvisible)
+            props.attachParent(this, i++)
+            if (predicate(props)) return true
+        }
+        return false
+    }
+
+    // 显式栈，有上下文时子节点列表缓存在 ViewNode 上，之后的遍历不再获取
+    override fun anyDescendant(
+        maxDepth: Int, maxNodes: Int, predicate: (NodeProps) -> Boolean
+    ): Boolean {
+        if (maxDepth <= 0 || maxNodes <= 0) return false
+        val props = LiveNodeProps()
+        var iters = arrayOfNulls<Iterator<ViewNode?>>(8)
+        var sp = 0
+        var count = 0
+        iters[sp++] = (owner ?: NodeIdentity.obtain(node)).children.iterator()
+        while (sp > 0) {
+            val it = iters[sp - 1]!!
+            if (!it.hasNext()) {
+                iters[--sp] = null
+                continue
+            }
+            val c = it.next() ?: continue
+            if (!includeInvisible && !c.isVisibleToUser) continue
+            props.node = c.node
+            props.attach(c, includeInvisible)
+            if (predicate(props)) return true
+            if (++count >= maxNodes) return false
+            if (sp < maxDepth) {
+                if (sp == iters.size) iters = iters.copyOf(sp * 2)
+                iters[sp++] = c.children.iterator()
+            }
+        }
+        return false
+    }
+
+    // 可搜索的子节点：非空，includeInvisible 为 false 时只含可见节点，即快照捕获的子节点
+    private fun searchable(c: AcsNode) = includeInvisible || c.isVisibleToUser
+
+    private companion object {
+        const val L_TEXT = 1
+        const val L_DESC = 1 shl 1
+        const val L_CLASS = 1 shl 2
+        const val L_ID = 1 shl 3
+        const val L_PKG = 1 shl 4
+        const val L_CHILD_COUNT = 1 shl 5
+        const val L_DISPLAY = 1 shl 6
+        const val L_FLAGS = 1 shl 7
+        const val L_PARENT = 1 shl 8
+        const val L_INDEX = 1 shl 9
+        const val L_BOUNDS = 1 shl 10
+
+        // IllegalStateException: Cannot perform this action on a not sealed instance.
+        fun getChild(node: AcsNode, i: Int): AcsNode? = try {
+            node.getChild(i)
+        } catch (e: IllegalStateException) {
+            null
+        }
+    }
+}
+
+/**
+ * 遍历路径上各层节点的 [LiveNodeProps]
+ * 第 k 层为栈中第 k 个子节点迭代器所属节点，其子节点使用第 k + 1 层实例，
+ * 祖先属性在兄弟节点间共享，结构条件不再向上查询父节点
+ */
+internal class PropsStack(private val includeInvisible: Boolean) {
+    private var levels = arrayOfNulls<LiveNodeProps>(16)
+    private var indices = IntArray(16)
+
+    /**
+     * 起始节点，多窗口根节点视为无父节点，否则父节点实时获取
+     */
+    fun root(vn: ViewNode): LiveNodeProps {
+        val p = at(0)
+        p.node = vn.node
+        p.attach(vn, includeInvisible)
+        if (vn.isWindowsRoot) p.attachParent(null, -1)
+        indices[0] = 0
+        return p
+    }
+
+    /**
+     * 第 [k] 层节点的下一个可搜索子节点
+     */
+    fun child(k: Int, vn: ViewNode): LiveNodeProps {
+        val p = at(k + 1)
+        p.node = vn.node
+        p.attach(vn, includeInvisible)
+        p.attachParent(levels[k], indices[k]++)
+        indices[k + 1] = 0
+        return p
+    }
+
+    private fun at(k: Int): LiveNodeProps {
+        if (k >= levels.size) {
+            levels = levels.copyOf(k * 2)
+            indices = indices.copyOf(k * 2)
+        }
+        return levels[k] ?: LiveNodeProps().also { levels[k] = it }
+    }
+}
@@ -0,0 +1,210 @@
+package cn.vove7.auto.core.viewfinder
+
+import android.graphics.Rect
+import android.view.accessibility.AccessibilityNodeInfo
+
+/**
+ * # NodeStore
+ * 列式节点存储，[TreeSnapshot] 的数据载体
+ *
+ * 每个属性一列：
+ * - 结构：parent / depth / subtreeEnd / childCount 为 IntArray
+ * - bounds：IntArray，每个节点 4 个值 (left, top, right, bottom)
+ * - flags：IntArray，每个节点一组 [NodeProps].FLAG_* 位
+ * - 字符串：存放字符串池下标，-1 表示 null
+ *
+ * 整个层级只需要少量数组分配
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+internal class NodeStore(initialCapacity: Int = 256) {
+
+    var size = 0
+        private set
+
+    private var capacity = maxOf(initialCapacity, 16)
+
+    var infos = arrayOfNulls<AccessibilityNodeInfo>(capacity)
+        private set
+    var parents = IntArray(capacity)
+        private set
+    var depths = IntArray(capacity)
+        private set
+    var subtreeEnds = IntArray(capacity)
+        private set
+    var childCounts = IntArray(capacity)
+        private set
+    var displayIds = IntArray(capacity)
+        private set
+    var flags = IntArray(capacity)
+        private set
+    var bounds = IntArray(capacity * 4)
+        private set
+
+    var texts = IntArray(capacity)
+        private set
+    var descs = IntArray(capacity)
+        private set
+    var classNames = IntArray(capacity)
+        private set
+    var viewIds = IntArray(capacity)
+        private set
+    var packageNames = IntArray(capacity)
+        private set
+
+    val pool = StringPool()
+
+    private val tmpRect = Rect()
+
+    /**
+     * 读取 [info] 属性追加到末尾
+     * @return 节点下标
+     */
+    fun add(info: AccessibilityNodeInfo, parent: Int, depth: Int, displayId: Int): Int {
+        ensureCapacity(size + 1)
+        val i = size++
+        infos[i] = info
+        parents[i] = parent
+        depths[i] = depth
+        subtreeEnds[i] = i + 1
+        childCounts[i] = info.childCount
+        displayIds[i] = displayId
+        flags[i] = NodeProps.flagsOf(info)
+        info.getBoundsInScreen(tmpRect)
+        val b = i shl 2
+        bounds[b] = tmpRect.left
+        bounds[b + 1] = tmpRect.top
+        bounds[b + 2] = tmpRect.right
+        bounds[b + 3] = tmpRect.bottom
+        texts[i] = pool.intern(info.text)
+        descs[i] = pool.intern(info.contentDescription)
+        classNames[i] = pool.intern(info.className)
+        viewIds[i] = pool.intern(info.viewIdResourceName)
+        packageNames[i] = pool.intern(info.packageName)
+        return i
+    }
+
+    /**
+     * 从 [from] 复制节点数据，不读取节点
+     * @return 节点下标
+     */
+    fun copy(from: NodeStore, index: Int, parent: Int, depth: Int): Int {
+        ensureCapacity(size + 1)
+        val i = size++
+        infos[i] = from.infos[index]
+        parents[i] = parent
+        depths[i] = depth
+        subtreeEnds[i] = i + 1
+        childCounts[i] = from.childCounts[index]
+        displayIds[i] = from.displayIds[index]
+        flags[i] = from.flags[index]
+        System.arraycopy(from.bounds, index shl 2, bounds, i shl 2, 4)
+        texts[i] = pool.intern(from.string(from.texts, index))
+        descs[i] = pool.intern(from.string(from.descs, index))
+        classNames[i] = pool.intern(from.string(from.classNames, index))
+        viewIds[i] = pool.intern(from.string(from.viewIds, index))
+        packageNames[i] = pool.intern(from.string(from.packageNames, index))
+        return i
+    }
+
+    fun setSubtreeEnd(index: Int, end: Int) {
+        subtreeEnds[index] = end
+    }
+
+    fun string(column: IntArray, index: Int): String? = pool[column[index]]
+
+    fun getBounds(index: Int, out: Rect) {
+        val b = index shl 2
+        out.set(bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3])
+    }
+
+    /**
+     * 收缩为实际大小，捕获结束后调用
+     */
+    fun trim() {
+        if (capacity != size) resize(size)
+    }
+
+    private fun ensureCapacity(min: Int) {
+        if (min <= capacity) return
+        resize(maxOf(min, capacity * 2))
+    }
+
+    private fun resize(newCap: Int) {
+        capacity = newCap
+        infos = infos.copyOf(newCap)
+        parents = parents.copyOf(newCap)
+        depths = depths.copyOf(newCap)
+        subtreeEnds = subtreeEnds.copyOf(newCap)
+        childCounts = childCounts.copyOf(newCap)
+        displayIds = displayIds.copyOf(newCap)
+        flags = flags.copyOf(newCap)
+        bounds = bounds.copyOf(newCap * 4)
+        texts = texts.copyOf(newCap)
+        descs = descs.copyOf(newCap)
+        classNames = classNames.copyOf(newCap)
+        viewIds = viewIds.copyOf(newCap)
+        packageNames = packageNames.copyOf(newCap)
+    }
+}
+
+/**
+ * 快照内字符串池
+ * 相同内容只保存一份，列中存放下标
+ *
+ * 开放寻址表存放下标，直接以 CharSequence 内容查找，
+ * 已存在的内容不调用 toString，也不装箱
+ */
+internal class StringPool {
+    private var values = arrayOfNulls<String>(16)
+
+    // 下标表，-1 为空位
+    private var table = IntArray(32) { -1 }
+
+    var size = 0
+        private set
+
+    fun intern(cs: CharSequence?): Int {
+        cs ?: return -1
+        val h = hash(cs)
+        var i = h and (table.size - 1)
+        while (true) {
+            val idx = table[i]
+            if (idx < 0) break
+            if (contentEquals(values[idx]!!, cs)) return idx
+            i = (i + 1) and (table.size - 1)
+        }
+        val idx = size++
+        if (idx == values.size) values = values.copyOf(idx * 2)
+        values[idx] = cs.toString()
+        table[i] = idx
+        if (size * 2 > table.size) rehash()
+        return idx
+    }
+
+    operator fun get(index: Int): String? = if (index < 0) null else values[index]
+
+    private fun rehash() {
+        val t = IntArray(table.size * 2) { -1 }
+        val mask = t.size - 1
+        for (idx in 0 until size) {
+            var i = hash(values[idx]!!) and mask
+            while (t[i] >= 0) i = (i + 1) and mask
+            t[i] = idx
+        }
+        table = t
+    }
+
+    private fun hash(cs: CharSequence): Int {
+        var h = 0
+        for (i in 0 until cs.length) h = 31 * h + cs[i].code
+        return h * -0x61c88647 ushr 8
+    }
+
+    private fun contentEquals(s: String, cs: CharSequence): Boolean {
+        if (s.length != cs.length) return false
+        for (i in s.indices) if (s[i] != cs[i]) return false
+        return true
+    }
+}
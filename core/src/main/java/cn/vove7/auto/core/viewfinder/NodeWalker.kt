@@ -0,0 +1,356 @@
+package cn.vove7.auto.core.viewfinder
+
+import cn.vove7.auto.core.viewnode.ViewNode
+import java.util.Arrays
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * # NodeWalker
+ * 实时视图树遍历引擎，suspend 及阻塞 API 共用
+ *
+ * - 显式栈 / 队列，不递归，深层级不会栈溢出
+ * - interrupt 标记及 [LiveNodeProps] 整个遍历复用
+ * - DFS / 迭代加深由 [PropsStack] 提供父节点、兄弟位置，结构条件不产生额外 IPC；
+ *   BFS 无路径上下文，父节点实时获取
+ * - 已展开节点记录在 [NodeHashSet]，不装箱
+ * - [nextMatch] 可恢复，每次返回下一个匹配节点
+ *
+ * 单线程使用，每次搜索新建
+ *
+ * @param matcher 节点匹配，单个 finder 或 [FinderBatch]
+ * @param check 取消检查，每个节点调用一次
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+internal class NodeWalker(
+    private val matcher: WalkMatcher,
+    private val strategy: TraverseStrategy,
+    private val includeInvisible: Boolean,
+    private val budget: TraverseBudget,
+    private val check: () -> Unit,
+) {
+    constructor(
+        finder: ViewFinder<*>,
+        strategy: TraverseStrategy,
+        includeInvisible: Boolean,
+        budget: TraverseBudget,
+        check: () -> Unit,
+    ) : this(
+        WalkMatcher { props, _, interrupt -> finder.findCondition(props, interrupt) },
+        strategy, includeInvisible, budget, check
+    )
+
+    private val interrupt = AtomicBoolean(false)
+    private val stack = PropsStack(includeInvisible)
+
+    // BFS
+    private val props = LiveNodeProps()
+
+    // 已展开子节点的节点，防止异常视图树成环
+    private val expanded = NodeHashSet()
+
+    private var root: ViewNode? = null
+    private var rootDepth = 0
+
+    // DFS / 迭代加深：每层子节点迭代器，栈深 sp 层的子节点深度为 rootDepth + sp
+    private var iters = arrayOfNulls<Iterator<ViewNode?>>(16)
+    private var sp = 0
+
+    // 迭代加深
+    // 之后各轮不再展开的节点：被中断剪枝，或子树在上一轮已搜索完
+    private val done = NodeHashSet()
+    private var frames = arrayOfNulls<ViewNode>(16)
+    // 每层子树本轮是否还有更深的节点
+    private var frameDeeper = BooleanArray(16)
+    private var limit = 0
+    private var deeper = false
+
+    // BFS
+    private var queue = arrayOfNulls<ViewNode>(16)
+    private var queueDepths = IntArray(16)
+    private var head = 0
+    private var tail = 0
+    private var current: Iterator<ViewNode?>? = null
+    private var currentDepth = 0
+
+    /**
+     * 从 [root] 开始搜索其子孙节点，[root] 本身不匹配
+     * @param depth [root] 的深度
+     */
+    fun start(root: ViewNode, depth: Int): NodeWalker {
+        finish()
+        expanded.clear()
+        done.clear()
+        this.root = root
+        rootDepth = depth
+        stack.root(root)
+        when (strategy) {
+            TraverseStrategy.DFS -> push(root, depth)
+            TraverseStrategy.BFS -> enqueue(root, depth)
+            TraverseStrategy.ITERATIVE_DEEPENING -> {
+                limit = depth + 1
+                deeper = false
+                if (budget.canDescend(depth)) {
+                    expanded.add(root.node)
+                    pushFrame(root)
+                }
+            }
+        }
+        return this
+    }
+
+    /**
+     * 下一个匹配节点，遍历结束或超出预算返回 null
+     */
+    fun nextMatch(): ViewNode? = when (strategy) {
+        TraverseStrategy.DFS -> nextDfs()
+        TraverseStrategy.BFS -> nextBfs()
+        TraverseStrategy.ITERATIVE_DEEPENING -> nextDeepening()
+    }
+
+    fun collect(list: MutableList<ViewNode>) {
+        while (true) {
+            list.add(nextMatch() ?: break)
+        }
+    }
+
+    // 匹配后 interrupt 为 true 表示跳过子树
+    private fun match(props: NodeProps, depth: Int): Boolean {
+        interrupt.set(false)
+        return matcher.match(props, depth, interrupt)
+    }
+
+    private fun accept(node: ViewNode): Boolean = includeInvisible || node.isVisibleToUser
+
+    private fun nextDfs(): ViewNode? {
+        while (sp > 0) {
+            val it = iters[sp - 1]!!
+            if (!it.hasNext()) {
+                iters[--sp] = null
+                continue
+            }
+            check()
+            val child = it.next() ?: continue
+            if (!accept(child)) continue
+            if (!budget.visit()) return finish()
+            val depth = rootDepth + sp
+            val matched = match(stack.child(sp - 1, child), depth)
+            if (matched || !interrupt.get()) push(child, depth)
+            if (matched) return child
+        }
+        return null
+    }
+
+    // 每轮只匹配 limit 层节点，浅层子节点列表由 ViewNode 缓存
+    // 已搜索完的子树记录在 done，之后各轮只沿仍有更深节点的路径下降；
+    // expanded 每轮清空，同一轮内每个节点只展开一次，防止成环
+    private fun nextDeepening(): ViewNode? {
+        while (true) {
+            while (sp > 0) {
+                val it = iters[sp - 1]!!
+                if (!it.hasNext()) {
+                    popFrame()
+                    continue
+                }
+                check()
+                val child = it.next() ?: continue
+                if (!accept(child)) continue
+                val p = stack.child(sp - 1, child)
+                if (rootDepth + sp < limit) {
+                    if (child.node !in done && expanded.add(child.node)) pushFrame(child)
+                    continue
+                }
+                if (!budget.visit()) return finish()
+                val matched = match(p, rootDepth + sp)
+                if (!matched && interrupt.get()) {
+                    done.add(child.node)
+                } else if (child.childCount > 0) {
+                    deeper = true
+                    frameDeeper[sp - 1] = true
+                }
+                if (matched) return child
+            }
+            if (!deeper || budget.exhausted || limit >= budget.maxDepth) return null
+            limit++
+            deeper = false
+            expanded.clear()
+            val r = root ?: return null
+            stack.root(r)
+            expanded.add(r.node)
+            pushFrame(r)
+        }
+    }
+
+    private fun popFrame() {
+        val node = frames[--sp]!!
+        iters[sp] = null
+        frames[sp] = null
+        if (frameDeeper[sp]) {
+            if (sp > 0) frameDeeper[sp - 1] = true
+        } else {
+            done.add(node.node)
+        }
+    }
+
+    private fun nextBfs(): ViewNode? {
+        while (true) {
+            val it = current
+            if (it == null || !it.hasNext()) {
+                if (head == tail) {
+                    current = null
+                    return null
+                }
+                val node = queue[head]!!
+                val depth = queueDepths[head]
+                queue[head++] = null
+                currentDepth = depth + 1
+                current = if (budget.canDescend(depth) && expanded.add(node.node)) {
+                    node.children.iterator()
+                } else null
+                continue
+            }
+            check()
+            val child = it.next() ?: continue
+            if (!accept(child)) continue
+            if (!budget.visit()) return finish()
+            props.node = child.node
+            props.attach(child, includeInvisible)
+            val matched = match(props, currentDepth)
+            if (matched || !interrupt.get()) enqueue(child, currentDepth)
+            if (matched) return child
+        }
+    }
+
+    private fun push(node: ViewNode, depth: Int) {
+        if (!budget.canDescend(depth)) return
+        if (!expanded.add(node.node)) return
+        pushFrame(node)
+    }
+
+    private fun pushFrame(node: ViewNode) {
+        if (sp == iters.size) {
+            iters = iters.copyOf(sp * 2)
+            frames = frames.copyOf(sp * 2)
+            frameDeeper = frameDeeper.copyOf(sp * 2)
+        }
+        frames[sp] = node
+        frameDeeper[sp] = false
+        iters[sp++] = node.children.iterator()
+    }
+
+    private fun enqueue(node: ViewNode, depth: Int) {
+        if (tail == queue.size) {
+            if (head > 0) {
+                val n = tail - head
+                System.arraycopy(queue, head, queue, 0, n)
+                System.arraycopy(queueDepths, head, queueDepths, 0, n)
+                Arrays.fill(queue, n, tail, null)
+                head = 0
+                tail = n
+            } else {
+                queue = queue.copyOf(tail * 2)
+                queueDepths = queueDepths.copyOf(tail * 2)
+            }
+        }
+        queue[tail] = node
+        queueDepths[tail++] = depth
+    }
+
+    // 清空遍历状态
+    private fun finish(): ViewNode? {
+        while (sp > 0) {
+            iters[--sp] = null
+            frames[sp] = null
+        }
+        Arrays.fill(queue, head, tail, null)
+        head = 0
+        tail = 0
+        current = null
+        return null
+    }
+}
+
+/**
+ * [NodeWalker] 的节点匹配
+ */
+internal fun interface WalkMatcher {
+    /**
+     * @param depth 节点深度
+     * @param interrupt 不匹配时置为 true 表示跳过子树
+     */
+    fun match(props: NodeProps, depth: Int, interrupt: AtomicBoolean): Boolean
+}
+
+/**
+ * 节点集合，按 hashCode 开放寻址，不装箱
+ * 相同 hashCode 时再用 equals（windowId + sourceNodeId）比较
+ */
+internal class NodeHashSet(capacity: Int = 64) {
+    private var hashes = IntArray(tableSize(capacity))
+    private var nodes = arrayOfNulls<AcsNode>(hashes.size)
+
+    var size = 0
+        private set
+
+    fun add(node: AcsNode): Boolean {
+        if ((size + 1) * 2 > nodes.size) grow()
+        val h = node.hashCode()
+        val mask = nodes.size - 1
+        var i = mix(h) and mask
+        while (true) {
+            val n = nodes[i] ?: break
+            if (hashes[i] == h && n == node) return false
+            i = (i + 1) and mask
+        }
+        nodes[i] = node
+        hashes[i] = h
+        size++
+        return true
+    }
+
+    operator fun contains(node: AcsNode): Boolean {
+        val h = node.hashCode()
+        val mask = nodes.size - 1
+        var i = mix(h) and mask
+        while (true) {
+            val n = nodes[i] ?: return false
+            if (hashes[i] == h && n == node) return true
+            i = (i + 1) and mask
+        }
+    }
+
+    fun clear() {
+        if (size == 0) return
+        nodes.fill(null)
+        size = 0
+    }
+
+    private fun grow() {
+        val oldNodes = nodes
+        val oldHashes = hashes
+        nodes = arrayOfNulls(oldNodes.size * 2)
+        hashes = IntArray(nodes.size)
+        val mask = nodes.size - 1
+        for (k in oldNodes.indices) {
+            val n = oldNodes[k] ?: continue
+            var i = mix(oldHashes[k]) and mask
+            while (nodes[i] != null) i = (i + 1) and mask
+            nodes[i] = n
+            hashes[i] = oldHashes[k]
+        }
+    }
+
+    private companion object {
+        fun tableSize(capacity: Int): Int {
+            var n = 16
+            while (n < capacity * 2) n = n shl 1
+            return n
+        }
+
+        fun mix(h: Int): Int {
+            val x = h * -0x61c88647
+            return x xor (x ushr 16)
+        }
+    }
+}
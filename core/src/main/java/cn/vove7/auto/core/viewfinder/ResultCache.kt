@@ -0,0 +1,89 @@
+package cn.vove7.auto.core.viewfinder
+
+import android.os.SystemClock
+import cn.vove7.auto.core.AccessibilityEvents
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * # ResultCache
+ * finder 搜索结果缓存，视图未变化时重复搜索直接返回上次结果
+ *
+ * 键为 finder 的条件签名（[ViewFinder.finderInfo]）及影响结果的搜索参数，
+ * 结果记录搜索开始时的视图版本（[AccessibilityEvents.contentVersion]），
+ * 收到内容事件后版本改变，旧结果不再使用；另外超过
+ * [FinderConfig.FINDER_RESULT_CACHE_TTL] 的结果也不再使用，避免事件延迟或丢失时长期过期
+ *
+ * 仅缓存从根节点、未指定 windowFilter 的搜索；服务未订阅内容事件时
+ * （[AccessibilityEvents.tracksContentChanges]）不使用缓存，waitFor / waitHide 不使用缓存
+ * @see FinderConfig.FINDER_RESULT_CACHE
+ * @see ViewFinder.cacheResult
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+object ResultCache {
+
+    private class Entry(val generation: Long, val time: Long, val value: Any?)
+
+    private val cache = object : LinkedHashMap<String, Entry>(32, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry>?) =
+            size > FinderConfig.FINDER_RESULT_CACHE_SIZE
+    }
+
+    private val hits = AtomicLong(0)
+    private val misses = AtomicLong(0)
+
+    /**
+     * 当前视图版本，搜索前读取
+     */
+    val generation: Long get() = AccessibilityEvents.contentVersion.value
+
+    val hitCount: Long get() = hits.get()
+    val missCount: Long get() = misses.get()
+
+    val size: Int get() = synchronized(cache) { cache.size }
+
+    /**
+     * @return 缓存的结果（可能为 null，即未找到），未命中时返回 [MISS]
+     */
+    internal fun get(key: String, generation: Long): Any? {
+        val entry = synchronized(cache) {
+            val e = cache[key]
+            if (e != null && (e.generation != generation ||
+                        SystemClock.elapsedRealtime() - e.time > FinderConfig.FINDER_RESULT_CACHE_TTL)
+            ) {
+                cache.remove(key)
+                null
+            } else e
+        }
+        if (entry == null) {
+            misses.incrementAndGet()
+            return MISS
+        }
+        hits.incrementAndGet()
+        return entry.value
+    }
+
+    /**
+     * @param generation 搜索开始前的版本，搜索期间有事件时结果不会被使用
+     */
+    internal fun put(key: String, generation: Long, value: Any?) {
+        if (generation != this.generation) return
+        synchronized(cache) {
+            cache[key] = Entry(generation, SystemClock.elapsedRealtime(), value)
+        }
+    }
+
+    fun clear() {
+        synchronized(cache) { cache.clear() }
+    }
+
+    fun resetStats() {
+        hits.set(0)
+        misses.set(0)
+    }
+
+    internal val MISS = Any()
+
+    override fun toString() = "ResultCache(size=$size, hits=$hitCount, misses=$missCount)"
+}
@@ -0,0 +1,311 @@
+package cn.vove7.auto.core.viewfinder
+
+// 解析结果，每次调用创建新的条件
+private typealias Plan = () -> MatchCondition
+
+/**
+ * # Selector
+ * 文本选择器，编译为 SmartFinderConditions 中的条件
+ *
+ * 语法：
+ * - `#btn_ok` id，可带点号 `#com.app.ok`，含 `:` `/` 等字符时加引号 `#"com.app:id/ok"`
+ * - `.Button` className 包含 Button（忽略大小写），可带点号 `.android.widget.Button`
+ * - `[text=确定]` `[text="确 定"]` 属性，支持 text / desc / id / class / pkg / display
+ *   - `=` 相等，`*=` 包含，`^=` 开头，`~=` 正则
+ *   - `%=` 相似度，值后跟阈值：`[text%="设置" 0.8]`
+ * - `:clickable` `:checked(false)` 状态，另有 `:hasChild` `:noChild`
+ * - `:nth(0)` 在父节点中的位置，`:nth(-1)` 为最后一个
+ * - `:has(.TextView[text=OK])` 存在满足条件的子孙节点
+ * - `A > B` B 的父节点满足 A；`A B` B 的某个祖先满足 A；`A ~ B` B 的某个兄弟节点满足 A
+ * - `A, B` 满足 A 或 B
+ *
+ * 同一段内的条件为 AND，如 `.EditText[text*=密码]:focused`
+ *
+ * 解析结果按选择器字符串缓存（LRU），同一选择器不会重复解析；
+ * ConditionGroup 持有可变状态，每次 [compile] 由缓存的解析结果创建新的条件
+ * @see FinderConfig.FINDER_SELECTOR_CACHE_SIZE
+ *
+ * 用法：
+ * ```kotlin
+ * SF.selector(".ListView > .TextView[text^=设置]").findFirst()
+ * ```
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+object Selector {
+
+    private val cache = object : LinkedHashMap<String, Plan>(64, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Plan>?) =
+            size > FinderConfig.FINDER_SELECTOR_CACHE_SIZE
+    }
+
+    /**
+     * 编译选择器，每次返回新的条件，调用方可独立修改
+     * @throws IllegalArgumentException 语法错误
+     */
+    fun compile(selector: String): MatchCondition {
+        synchronized(cache) { cache[selector] }?.let { return it() }
+        val plan = Parser(selector).parse()
+        synchronized(cache) { cache[selector] = plan }
+        return plan()
+    }
+
+    fun clearCache() {
+        synchronized(cache) { cache.clear() }
+    }
+
+    val cacheSize: Int get() = synchronized(cache) { cache.size }
+
+    private class Parser(private val src: String) {
+        private var pos = 0
+
+        fun parse(): Plan {
+            val cond = alternatives()
+            if (pos < src.length) fail("unexpected '${src[pos]}'")
+            return cond
+        }
+
+        private fun alternatives(): Plan {
+            val alternatives = mutableListOf<Plan>()
+            do {
+                skipWs()
+                alternatives += complex()
+                skipWs()
+            } while (eat(','))
+            if (alternatives.size == 1) return alternatives[0]
+            return {
+                val group = ConditionGroup()
+                alternatives.forEachIndexed { i, c ->
+                    if (i == 0) group.and(c()) else group.or(c())
+                }
+                group
+            }
+        }
+
+        // 从左到右，左侧结果作为右侧节点的父节点 / 祖先 / 兄弟条件
+        private fun complex(): Plan {
+            var cond = group(compound())
+            while (true) {
+                val save = pos
+                val ws = skipWs()
+                val left = cond
+                cond = when {
+                    eat('>') -> {
+                        skipWs()
+                        group(compound()) { ParentCondition(left()) }
+                    }
+                    eat('~') -> {
+                        skipWs()
+                        group(compound()) { SiblingCondition(left()) }
+                    }
+                    ws && pos < src.length && src[pos] != ',' && src[pos] != ')' ->
+                        group(compound()) { AncestorCondition(left()) }
+                    else -> {
+                        pos = save
+                        return cond
+                    }
+                }
+            }
+        }
+
+        private fun compound(): List<Plan> {
+            val list = mutableListOf<Plan>()
+            while (pos < src.length) {
+                list += when (src[pos]) {
+                    '#' -> {
+                        pos++
+                        leaf(IdCondition(value(NAME_DELIMITERS)))
+                    }
+                    '.' -> {
+                        pos++
+                        leaf(ClassNameCondition(arrayOf(value(NAME_DELIMITERS))))
+                    }
+                    '[' -> attribute()
+                    ':' -> pseudo()
+                    else -> break
+                }
+            }
+            if (list.isEmpty()) fail("expected '#', '.', '[' or ':'")
+            return list
+        }
+
+        private fun attribute(): Plan {
+            expect('[')
+            skipWs()
+            val name = ident()
+            skipWs()
+            val op = when {
+                eat('=') -> "="
+                src.startsWith("*=", pos) || src.startsWith("^=", pos) ||
+                        src.startsWith("~=", pos) || src.startsWith("%=", pos) -> {
+                    pos += 2
+                    src.substring(pos - 2, pos)
+                }
+                else -> fail("expected operator")
+            }
+            skipWs()
+            val v = value("]")
+            skipWs()
+            val limit = if (op == "%=") number() else 0f
+            skipWs()
+            expect(']')
+            return leaf(when (name) {
+                "text" -> when (op) {
+                    "=" -> TextEqCondition(arrayOf(v))
+                    "*=" -> ContainTextCondition(arrayOf(v))
+                    "^=" -> TextStartWithsCondition(v)
+                    "~=" -> RTextEqCondition(v)
+                    else -> SimilarityTextCondition(v, limit)
+                }
+                "desc" -> when (op) {
+                    "=" -> DescEqCondition(arrayOf(v))
+                    "*=" -> ContainDescCondition(arrayOf(v))
+                    "^=" -> DescStartWithsCondition(v)
+                    "~=" -> RDescEqCondition(v)
+                    else -> SimilarityDescCondition(v, limit)
+                }
+                "id" -> if (op == "=") IdCondition(v) else unsupported(name, op)
+                "class" -> if (op == "=" || op == "*=") {
+                    ClassNameCondition(arrayOf(v))
+                } else unsupported(name, op)
+                "pkg" -> if (op == "=") PackageCondition(arrayOf(v)) else unsupported(name, op)
+                "display" -> if (op == "=") {
+                    DisplayIdCondition(v.toIntOrNull() ?: fail("display must be int"))
+                } else unsupported(name, op)
+                else -> fail("unknown attribute '$name'")
+            })
+        }
+
+        private fun pseudo(): Plan {
+            expect(':')
+            val name = ident()
+            when (name) {
+                "nth" -> {
+                    expect('(')
+                    skipWs()
+                    val start = pos
+                    eat('-')
+                    while (pos < src.length && src[pos].isDigit()) pos++
+                    val index = src.substring(start, pos).toIntOrNull() ?: fail("expected index")
+                    skipWs()
+                    expect(')')
+                    return leaf(NthChildCondition(index))
+                }
+                "has" -> {
+                    expect('(')
+                    val cond = alternatives()
+                    expect(')')
+                    return { HasDescendantCondition(cond()) }
+                }
+            }
+            var b = true
+            if (eat('(')) {
+                skipWs()
+                b = when (val v = ident()) {
+                    "true" -> true
+                    "false" -> false
+                    else -> fail("expected true or false, got '$v'")
+                }
+                skipWs()
+                expect(')')
+            }
+            return leaf(when (name) {
+                "clickable" -> ClickableCondition(b)
+                "longClickable" -> LongClickableCondition(b)
+                "checkable" -> CheckableCondition(b)
+                "checked" -> CheckedCondition(b)
+                "editable" -> EditableCondition(b)
+                "enabled" -> EnabledCondition(b)
+                "focusable" -> FocusableCondition(b)
+                "focused" -> FocusedCondition(b)
+                "scrollable" -> ScrollableCondition(b)
+                "selected" -> SelectedCondition(b)
+                "dismissable" -> DismissableCondition(b)
+                "hasChild" -> if (b) HasChildCondition else NoChildCondition
+                "noChild" -> if (b) NoChildCondition else HasChildCondition
+                else -> fail("unknown state ':$name'")
+            })
+        }
+
+        // 引号字符串，或到空白 / [delimiters] 为止
+        private fun value(delimiters: String): String {
+            if (pos >= src.length) fail("expected value")
+            val q = src[pos]
+            if (q != '"' && q != '\'') {
+                val start = pos
+                while (pos < src.length && !src[pos].isWhitespace() && src[pos] !in delimiters) pos++
+                if (pos == start) fail("expected value")
+                return src.substring(start, pos)
+            }
+            pos++
+            val sb = StringBuilder()
+            while (true) {
+                if (pos >= src.length) fail("unterminated string")
+                val c = src[pos++]
+                when (c) {
+                    q -> return sb.toString()
+                    '\\' -> {
+                        if (pos >= src.length) fail("unterminated string")
+                        sb.append(src[pos++])
+                    }
+                    else -> sb.append(c)
+                }
+            }
+        }
+
+        private fun ident(): String {
+            val start = pos
+            while (pos < src.length && (src[pos].isLetterOrDigit() || src[pos] == '_' || src[pos] == '$')) {
+                pos++
+            }
+            if (pos == start) fail("expected name")
+            return src.substring(start, pos)
+        }
+
+        private fun number(): Float {
+            val start = pos
+            while (pos < src.length && (src[pos].isDigit() || src[pos] == '.')) pos++
+            return src.substring(start, pos).toFloatOrNull() ?: fail("expected similarity limit")
+        }
+
+        // 叶子条件不可变，各次调用共享同一实例
+        private fun leaf(cond: MatchCondition): Plan = { cond }
+
+        // ConditionGroup 及包含它的结构条件每次新建
+        private fun group(conditions: List<Plan>, extra: Plan? = null): Plan {
+            val all = if (extra == null) conditions else conditions + listOf(extra)
+            if (all.size == 1) return all[0]
+            return { ConditionGroup().and(*Array(all.size) { all[it]() }) }
+        }
+
+        private fun skipWs(): Boolean {
+            val start = pos
+            while (pos < src.length && src[pos].isWhitespace()) pos++
+            return pos > start
+        }
+
+        private fun eat(c: Char): Boolean {
+            if (pos < src.length && src[pos] == c) {
+                pos++
+                return true
+            }
+            return false
+        }
+
+        private fun expect(c: Char) {
+            if (!eat(c)) fail("expected '$c'")
+        }
+
+        private fun unsupported(name: String, op: String): Nothing = fail("'$op' not supported by $name")
+
+        private fun fail(msg: String): Nothing =
+            throw IllegalArgumentException("selector error at $pos: $msg\n$src")
+    }
+
+    // id / className 可包含点号
+    private const val NAME_DELIMITERS = "#[]:>~,()"
+}
+
+fun selector(selector: String) = Selector.compile(selector)
+fun ConditionGroup.selector(selector: String) = link(Selector.compile(selector))
@@ -0,0 +1,99 @@
+package cn.vove7.auto.core.viewfinder
+
+import cn.vove7.auto.core.utils.FuzzyMatcher
+import cn.vove7.auto.core.viewnode.ViewNode
+
+/**
+ * # SimilarityRanker
+ * 相似度前 k 名，text / desc 取较高者
+ *
+ * - 只保留前 k 个（最小堆），堆满后新节点需严格高于第 k 名
+ * - 以当前第 k 名（或 minScore）为阈值，长度差已无法达到的节点不计算编辑距离，
+ *   计算中超出阈值时提前结束 @see FuzzyMatcher.similarity
+ *
+ * 相似度相同时按遍历顺序，先遇到的在前；text / desc 都为空的节点不参与
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+internal class SimilarityRanker(
+    text: String,
+    private val k: Int,
+    private val minScore: Float,
+) {
+    private val matcher = FuzzyMatcher(text)
+
+    private val heap = arrayOfNulls<ScoredNode>(maxOf(k, 0))
+    private val orders = IntArray(maxOf(k, 0))
+    private var size = 0
+    private var order = 0
+
+    fun offer(node: ViewNode) {
+        if (k <= 0) return
+        val full = size == k
+        val threshold = if (full) maxOf(minScore, heap[0]!!.score) else minScore
+        var score = score(node.node.text, threshold)
+        val ds = score(node.node.contentDescription, if (score.isNaN()) threshold else score)
+        if (!ds.isNaN() && (score.isNaN() || ds > score)) score = ds
+        val o = order++
+        if (score.isNaN() || (full && score <= heap[0]!!.score)) return
+        val sn = ScoredNode(node, score)
+        if (!full) {
+            var c = size++
+            while (c > 0) {
+                val p = (c - 1) / 2
+                if (!worse(sn.score, o, heap[p]!!.score, orders[p])) break
+                heap[c] = heap[p]
+                orders[c] = orders[p]
+                c = p
+            }
+            heap[c] = sn
+            orders[c] = o
+            return
+        }
+        // 替换堆顶（第 k 名）后下沉
+        var c = 0
+        while (true) {
+            var m = 2 * c + 1
+            if (m >= size) break
+            if (m + 1 < size && worse(heap[m + 1]!!.score, orders[m + 1], heap[m]!!.score, orders[m])) m++
+            if (!worse(heap[m]!!.score, orders[m], sn.score, o)) break
+            heap[c] = heap[m]
+            orders[c] = orders[m]
+            c = m
+        }
+        heap[c] = sn
+        orders[c] = o
+    }
+
+    fun offerAll(nodes: Sequence<ViewNode>): SimilarityRanker {
+        for (n in nodes) offer(n)
+        return this
+    }
+
+    /**
+     * 按相似度降序
+     */
+    fun result(): List<ScoredNode> {
+        return (0 until size)
+            .sortedWith(compareByDescending<Int> { heap[it]!!.score }.thenBy { orders[it] })
+            .map { heap[it]!! }
+    }
+
+    private fun score(s: CharSequence?, limit: Float): Float =
+        if (s.isNullOrEmpty()) Float.NaN else matcher.similarity(s, limit)
+
+    // 分数低，或分数相同时后遇到
+    private fun worse(s1: Float, o1: Int, s2: Float, o2: Int) = s1 < s2 || (s1 == s2 && o1 > o2)
+}
+
+/**
+ * 相似度搜索结果
+ * @property score 相似度 [0, 1]
+ */
+class ScoredNode(
+    val node: ViewNode,
+    val score: Float,
+) {
+    override fun toString() = "ScoredNode(score=$score, node=$node)"
+}
@@ -18,6 +18,9 @@ fun interface MatchCondition {
 
     val canInterrupt: Boolean get() = false
 
+    // 匹配开销估计，ConditionGroup 按此排序可交换的条件
+    val cost: Int get() = COST_DEFAULT
+
     // AcsNode 条件匹配
     // interrupt: 中断子结点查询
     // 值为 true 时，当 invoke 返回false将中止 children 查询
@@ -26,6 +29,37 @@ fun interface MatchCondition {
     }
 
     fun match(node: AcsNode): Boolean
+
+    // NodeProps 条件匹配，可为快照节点
+    fun match(node: NodeProps, interrupt: AtomicBoolean) = match(node).also {
+        interrupt.set(canInterrupt && !it)
+    }
+
+    // 默认使用原始节点匹配，内置条件直接读取 NodeProps
+    fun match(node: NodeProps): Boolean = match(node.acsNode)
+
+    companion object {
+        const val COST_FLAG = 1
+        const val COST_STRUCTURE = 2
+        const val COST_PACKAGE = 2
+        const val COST_ID = 4
+        const val COST_CLASS = 4
+        const val COST_TEXT = 6
+        const val COST_CONTAINS = 10
+        const val COST_DEFAULT = 20
+        const val COST_WINDOW = 30
+        const val COST_REGEX = 40
+        const val COST_SIMILARITY = 80
+    }
+}
+
+/**
+ * 基于 [NodeProps] 的条件，可直接在快照上匹配
+ */
+abstract class NodePropsCondition : MatchCondition {
+    override fun match(node: AcsNode): Boolean = match(LiveNodeProps(node))
+
+    abstract override fun match(node: NodeProps): Boolean
 }
 
 enum class ConditionType { AND, OR }
@@ -45,6 +79,12 @@ open class ConditionGroup(
     override var conditionType: ConditionType = ConditionType.AND
     internal val conditions: MutableList<MatchCondition> = mutableListOf()
     private var lastType: ConditionType = ConditionType.AND
+
+    // 编译后的求值计划，条件变化时置空
+    @Volatile
+    private var plan: ConditionPlan? = null
+
+    override val cost: Int get() = conditions.sumOf { it.cost }
     override val finder: ViewFinder<*> get() = this
 
     override fun toString() = buildString {
@@ -59,6 +99,9 @@ open class ConditionGroup(
     }
 
     override fun findCondition(node: AcsNode, interrupt: AtomicBoolean):
+            Boolean = match(LiveNodeProps(node), interrupt)
+
+    override fun findCondition(node: NodeProps, interrupt: AtomicBoolean):
             Boolean = match(node, interrupt)
 
     fun and(vararg conditions: MatchCondition): ConditionGroup {
@@ -69,6 +112,7 @@ open class ConditionGroup(
         this.conditions.addAll(conditions.map {
             ConditionNode(ConditionType.AND, it)
         })
+        plan = null
         return this
     }
 
@@ -79,11 +123,13 @@ open class ConditionGroup(
 
     infix fun and(cond: MatchCondition): ConditionGroup {
         this.conditions.add(ConditionNode(ConditionType.AND, cond))
+        plan = null
         return this
     }
 
     infix fun or(cond: MatchCondition): ConditionGroup {
         this.conditions.add(ConditionNode(ConditionType.OR, cond))
+        plan = null
         return this
     }
 
@@ -95,18 +141,21 @@ open class ConditionGroup(
         this.conditions.addAll(conditions.map {
             ConditionNode(ConditionType.OR, it)
         })
+        plan = null
         return this
     }
 
     infix fun and(group: ConditionGroup): ConditionGroup {
         group.conditionType = ConditionType.AND
         conditions.add(group)
+        plan = null
         return this
     }
 
     infix fun or(group: ConditionGroup): ConditionGroup {
         group.conditionType = ConditionType.OR
         conditions.add(group)
+        plan = null
         return this
     }
 
@@ -114,26 +163,41 @@ open class ConditionGroup(
         error("SF Don't want to enter here [match]")
     }
 
-    override fun match(node: AcsNode, interrupt: AtomicBoolean): Boolean {
-        if (conditions.isEmpty()) {
-            throw IllegalArgumentException("SmartFinder has no conditions")
-        }
-        if (conditions.first().conditionType == ConditionType.OR) {
-            throw IllegalStateException("first condition type must be AND")
-        }
-        conditions.forEachIndexed { i, cond ->
-            if (cond.match(node, interrupt)) {
-                if (i + 1 < conditions.size && conditions[i + 1].conditionType == ConditionType.OR) {
-                    // break true or (..)
-                    return true
-                }
-                return@forEachIndexed
-            } else if (i + 1 < conditions.size && conditions[i + 1].conditionType == ConditionType.OR) {
-                return@forEachIndexed
-            } else return false
+    override fun match(node: AcsNode, interrupt: AtomicBoolean): Boolean =
+        match(LiveNodeProps(node), interrupt)
+
+    override fun match(node: NodeProps): Boolean {
+        error("SF Don't want to enter here [match]")
+    }
+
+    override fun match(node: NodeProps, interrupt: AtomicBoolean): Boolean =
+        compiledPlan().eval(node, interrupt)
+
+    /**
+     * 当前求值计划，按 [ConditionStats] 排序后的实际执行顺序
+     */
+    fun explain(): String = ConditionPlan.compile(this).toString()
+
+    override fun snapshotCandidates(snapshot: TreeSnapshot): IntArray? =
+        compiledPlan().candidates(snapshot.index)
+
+    override val canPrune: Boolean get() = compiledPlan().canInterrupt
+
+    // 顶层 AND 中的包名 / displayId 条件
+    override fun derivedWindowFilter(): WindowFilter? {
+        val leaves = when (val p = compiledPlan()) {
+            is ConditionPlan.Leaf -> listOf(p)
+            is ConditionPlan.And -> p.children.filterIsInstance<ConditionPlan.Leaf>()
+            else -> return null
         }
-        // all pass
-        return true
+        return WindowFilter.derive(leaves.map { it.core })
+    }
+
+    private fun compiledPlan() = plan ?: ConditionPlan.compile(this).also { plan = it }
+
+    // 嵌套条件组可能在外部被修改，每次搜索重新编译
+    override fun onTraverseStart() {
+        plan = ConditionPlan.compile(this)
     }
 
     infix fun where(cond: MatchCondition): ConditionGroup = and(cond)
@@ -148,8 +212,10 @@ open class ConditionGroup(
     )
 }
 
-private class LambdaCondition(cond: MatchCondition, tag: String?) : MatchCondition by cond {
-    private val _tag = tag ?: cond.toString()
+internal class LambdaCondition(
+    internal val condition: MatchCondition, tag: String?
+) : MatchCondition by condition {
+    private val _tag = tag ?: condition.toString()
     override fun toString() = _tag
 }
 
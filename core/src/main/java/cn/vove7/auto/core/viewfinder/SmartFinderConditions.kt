@@ -2,8 +2,12 @@
 
 package cn.vove7.auto.core.viewfinder
 
+import android.graphics.Rect
 import androidx.core.view.accessibility.AccessibilityNodeInfoCompat
-import cn.vove7.auto.core.utils.compareSimilarity
+import cn.vove7.auto.core.utils.AhoCorasick
+import cn.vove7.auto.core.utils.FuzzyMatcher
+import cn.vove7.auto.core.utils.TextSet
+import java.util.concurrent.atomic.AtomicBoolean
 
 /**
  * # SmartFinderConditions
@@ -18,10 +22,18 @@ private fun requireNotEmpty(list: Array<*>) {
     if (list.isEmpty()) throw IllegalStateException("requireNotEmpty")
 }
 
-class IdCondition(private val targetId: String) : MatchCondition {
-    override fun match(node: AcsNode): Boolean {
-        val vid = node.viewIdResourceName ?: return false
-        return vid.endsWith("/$targetId", true) || vid.equals(targetId, true)
+class IdCondition(
+    private val targetId: String
+) : NodePropsCondition(), IndexableCondition {
+    override val cost = MatchCondition.COST_ID
+
+    override fun candidates(index: SnapshotIndex) = index.byId(targetId)
+
+    private val suffix = "/$targetId"
+
+    override fun match(node: NodeProps): Boolean {
+        val vid = node.viewId ?: return false
+        return vid.endsWith(suffix, true) || vid.equals(targetId, true)
     }
 
     override fun toString() = "ID == $targetId"
@@ -30,12 +42,26 @@ class IdCondition(private val targetId: String) : MatchCondition {
 fun ConditionGroup.id(id: String) = link(IdCondition(id))
 fun id(id: String) = IdCondition(id)
 
-class IdSCondition(private val targetIds: Array<out String>) : MatchCondition {
-    override fun match(node: AcsNode): Boolean {
-        val vid = node.viewIdResourceName ?: return false
-        return targetIds.any { id ->
-            vid.endsWith("/$id", true) || vid.equals(id, true)
+class IdSCondition(
+    private val targetIds: Array<out String>
+) : NodePropsCondition(), IndexableCondition {
+    override val cost = MatchCondition.COST_ID
+
+    override fun candidates(index: SnapshotIndex) =
+        targetIds.fold(SnapshotIndex.EMPTY) { r, id -> SnapshotIndex.union(r, index.byId(id)) }
+
+    private val idSet = TextSet(targetIds)
+
+    // vid == id 或 vid 以 "/id" 结尾：整体及每个 '/' 之后的部分查表
+    override fun match(node: NodeProps): Boolean {
+        val vid = node.viewId ?: return false
+        if (vid in idSet) return true
+        var i = vid.indexOf('/')
+        while (i >= 0) {
+            if (idSet.contains(vid, i + 1, vid.length)) return true
+            i = vid.indexOf('/', i + 1)
         }
+        return false
     }
 
     override fun toString() = "ID in ${targetIds.contentToString()}"
@@ -44,11 +70,19 @@ class IdSCondition(private val targetIds: Array<out String>) : MatchCondition {
 fun ConditionGroup.ids(vararg id: String) = link(IdSCondition(id))
 
 
-class PackageCondition(private val names: Array<out CharSequence>) : MatchCondition {
+class PackageCondition(
+    internal val names: Array<out CharSequence>
+) : NodePropsCondition(), IndexableCondition {
+    override val cost = MatchCondition.COST_PACKAGE
     override val canInterrupt = true
 
-    override fun match(node: AcsNode): Boolean {
-        return node.packageName in names
+    override fun candidates(index: SnapshotIndex) = names.fold(SnapshotIndex.EMPTY) { r, n ->
+        SnapshotIndex.union(r, index.byPackage(n.toString()))
+    }
+
+    override fun match(node: NodeProps): Boolean {
+        val pkg = node.packageName ?: return false
+        return names.any { it.contentEquals(pkg) }
     }
 
     override fun toString(): String {
@@ -60,14 +94,23 @@ fun ConditionGroup.packageName(vararg packageNames: CharSequence) =
     link(PackageCondition(packageNames))
 
 
-class TextEqCondition(private val texts: Array<out String>) : MatchCondition {
+class TextEqCondition(
+    private val texts: Array<out String>
+) : NodePropsCondition(), IndexableCondition {
+    override val cost = MatchCondition.COST_TEXT
+
+    override fun candidates(index: SnapshotIndex) =
+        texts.fold(SnapshotIndex.EMPTY) { r, t -> SnapshotIndex.union(r, index.byText(t)) }
+
     init {
         requireNotEmpty(texts)
     }
 
-    override fun match(node: AcsNode) = node.text?.toString()?.let {
-        texts.any { t -> t.equals(it, ignoreCase = true) }
-    } ?: false
+    private val textSet = TextSet(texts)
+
+    override fun match(node: NodeProps): Boolean {
+        return (node.text ?: return false) in textSet
+    }
 
     override fun toString() = if (texts.size == 1)
         "TEXT == ${texts.first()}"
@@ -79,10 +122,15 @@ fun ConditionGroup.text(vararg texts: String) = link(TextEqCondition(texts))
 fun text(vararg texts: String) = TextEqCondition(texts)
 
 class HashCondition(private val hash: String) : MatchCondition {
+    // "0x" + Integer.toHexString(hashCode)，只解析一次
+    private val target = hash.removePrefix("0x").toLongOrNull(16)?.toInt()
+        ?.takeIf { "0x" + Integer.toHexString(it) == hash }
+
     override fun match(node: AcsNode): Boolean {
-        val nodeHash = "0x" + Integer.toHexString(node.hashCode())
-        return nodeHash == hash
+        return target != null && node.hashCode() == target
     }
+
+    override fun toString() = "HASH == $hash"
 }
 
 fun ConditionGroup.hash(hash: String) = link(HashCondition(hash))
@@ -106,18 +154,24 @@ object _text {
     infix fun match(s: String): MatchCondition = RTextEqCondition(s)
 }
 
-abstract class RegexCondition(regex: String) : MatchCondition {
+abstract class RegexCondition(regex: String) : NodePropsCondition() {
+    override val cost = MatchCondition.COST_REGEX
+
     abstract fun AcsNode.nodeText(): String?
     internal val reg = regex.toRegex()
 
-    override fun match(node: AcsNode) =
-        node.nodeText()?.let {
+    // 快照 / 遍历时读取的文本，默认读取原始节点；内置子类直接读取 NodeProps
+    open fun NodeProps.propsText(): CharSequence? = acsNode.nodeText()
+
+    override fun match(node: NodeProps) =
+        node.propsText()?.let {
             reg.matches(it)
         } ?: false
 }
 
 class RTextEqCondition(regex: String) : RegexCondition(regex) {
     override fun AcsNode.nodeText(): String? = text?.toString()
+    override fun NodeProps.propsText(): CharSequence? = text
 
     override fun toString() = "${reg.pattern} matches(TEXT)"
 }
@@ -125,14 +179,29 @@ class RTextEqCondition(regex: String) : RegexCondition(regex) {
 fun ConditionGroup.matchText(reg: String) = link(RTextEqCondition(reg))
 fun matchText(reg: String) = RTextEqCondition(reg)
 
-class ContainTextCondition(private val texts: Array<out String>) : MatchCondition {
+class RDescEqCondition(regex: String) : RegexCondition(regex) {
+    override fun AcsNode.nodeText(): String? = contentDescription?.toString()
+    override fun NodeProps.propsText(): CharSequence? = desc
+
+    override fun toString() = "${reg.pattern} matches(DESC)"
+}
+
+fun ConditionGroup.matchDesc(reg: String) = link(RDescEqCondition(reg))
+fun matchDesc(reg: String) = RDescEqCondition(reg)
+
+class ContainTextCondition(private val texts: Array<out String>) : NodePropsCondition() {
+    override val cost = MatchCondition.COST_CONTAINS
+
     init {
         requireNotEmpty(texts)
     }
 
-    override fun match(node: AcsNode) = node.text?.toString()?.let {
-        texts.any { t -> it.contains(t, ignoreCase = true) }
-    } ?: false
+    // 模式数量不影响每个节点的匹配耗时
+    private val matcher = AhoCorasick(texts, ignoreCase = true)
+
+    override fun match(node: NodeProps): Boolean {
+        return matcher.containsAny(node.text ?: return false)
+    }
 
     override fun toString() = if (texts.size == 1)
         "TEXT contains ${texts.first()}"
@@ -145,9 +214,14 @@ fun containsText(vararg texts: String) = ContainTextCondition(texts)
 class SimilarityTextCondition(
     private val text: String,
     private val limit: Float
-) : MatchCondition {
-    override fun match(node: AcsNode): Boolean {
-        return compareSimilarity(node.text?.toString() ?: "", text) >= limit
+) : NodePropsCondition() {
+    override val cost = MatchCondition.COST_SIMILARITY
+
+    // 查询串只预处理一次
+    private val matcher = FuzzyMatcher(text)
+
+    override fun match(node: NodeProps): Boolean {
+        return matcher.matches(node.text ?: "", limit)
     }
 
     override fun toString() = "TEXT like $text >= $limit"
@@ -161,9 +235,14 @@ fun similarityText(text: String, limit: Float) = SimilarityTextCondition(text, l
 class SimilarityDescCondition(
     private val text: String,
     private val limit: Float
-) : MatchCondition {
-    override fun match(node: AcsNode): Boolean {
-        return compareSimilarity(node.contentDescription?.toString() ?: "", text) >= limit
+) : NodePropsCondition() {
+    override val cost = MatchCondition.COST_SIMILARITY
+
+    // 查询串只预处理一次
+    private val matcher = FuzzyMatcher(text)
+
+    override fun match(node: NodeProps): Boolean {
+        return matcher.matches(node.desc ?: "", limit)
     }
 
     override fun toString() = "DESC like $text >= $limit"
@@ -174,13 +253,22 @@ fun ConditionGroup.similarityDesc(text: String, limit: Float) =
 
 fun similarityDesc(text: String, limit: Float) = SimilarityDescCondition(text, limit)
 
-class DescEqCondition(private val texts: Array<out String>) : MatchCondition {
+class DescEqCondition(
+    private val texts: Array<out String>
+) : NodePropsCondition(), IndexableCondition {
+    override val cost = MatchCondition.COST_TEXT
+
+    override fun candidates(index: SnapshotIndex) =
+        texts.fold(SnapshotIndex.EMPTY) { r, t -> SnapshotIndex.union(r, index.byDesc(t)) }
+
     init {
         requireNotEmpty(texts)
     }
 
-    override fun match(node: AcsNode) = texts.any {
-        it.equals(node.contentDescription?.toString(), ignoreCase = true)
+    private val descSet = TextSet(texts)
+
+    override fun match(node: NodeProps): Boolean {
+        return (node.desc ?: return false) in descSet
     }
 
     override fun toString() = if (texts.size == 1)
@@ -191,14 +279,19 @@ class DescEqCondition(private val texts: Array<out String>) : MatchCondition {
 fun ConditionGroup.desc(vararg desc: String) = link(DescEqCondition(desc))
 fun desc(vararg desc: String) = DescEqCondition(desc)
 
-class ContainDescCondition(private val texts: Array<out String>) : MatchCondition {
+class ContainDescCondition(private val texts: Array<out String>) : NodePropsCondition() {
+    override val cost = MatchCondition.COST_CONTAINS
+
     init {
         requireNotEmpty(texts)
     }
 
-    override fun match(node: AcsNode) = node.contentDescription?.toString()?.let {
-        texts.any { t -> it.contains(t) }
-    } ?: false
+    // 区分大小写
+    private val matcher = AhoCorasick(texts, ignoreCase = false)
+
+    override fun match(node: NodeProps): Boolean {
+        return matcher.containsAny(node.desc ?: return false)
+    }
 
     override fun toString() = if (texts.size == 1)
         "DESC contains ${texts.first()}"
@@ -208,7 +301,11 @@ class ContainDescCondition(private val texts: Array<out String>) : MatchConditio
 fun ConditionGroup.containsDesc(vararg desc: String) = link(ContainDescCondition(desc))
 fun containsDesc(vararg desc: String) = ContainDescCondition(desc)
 
-class TextOrDescEqCondition(private val texts: Array<out String>) : MatchCondition {
+class TextOrDescEqCondition(
+    private val texts: Array<out String>
+) : NodePropsCondition(), IndexableCondition {
+    override val cost = MatchCondition.COST_TEXT
+
     init {
         requireNotEmpty(texts)
     }
@@ -216,22 +313,33 @@ class TextOrDescEqCondition(private val texts: Array<out String>) : MatchConditi
     private val tm = TextEqCondition(texts)
     private val dm = DescEqCondition(texts)
 
-    override fun match(node: AcsNode): Boolean {
+    override fun match(node: NodeProps): Boolean {
         return tm.match(node) || dm.match(node)
     }
 
+    override fun candidates(index: SnapshotIndex) =
+        SnapshotIndex.union(tm.candidates(index), dm.candidates(index))
+
     override fun toString() = "($tm || $dm)"
 }
 
 fun ConditionGroup.textOrDesc(vararg texts: String) = link(TextOrDescEqCondition(texts))
 fun textOrDesc(vararg texts: String) = TextOrDescEqCondition(texts)
 
-abstract class BoolCondition(internal val b: Boolean) : MatchCondition {
+abstract class BoolCondition(internal val b: Boolean) : NodePropsCondition() {
+    override val cost = MatchCondition.COST_FLAG
+
     abstract fun AcsNode.prop(): Boolean?
-    override fun match(node: AcsNode) = node.prop() == b
+
+    // NodeProps.FLAG_*，为 0 时读取 prop()
+    open val flag: Int get() = 0
+
+    override fun match(node: NodeProps) =
+        if (flag != 0) node.flag(flag) == b else node.acsNode.prop() == b
 }
 
 class ClickableCondition(b: Boolean) : BoolCondition(b) {
+    override val flag = NodeProps.FLAG_CLICKABLE
     override fun AcsNode.prop() = isClickable
 
     override fun toString() = if (b) "Clickable" else "NotClickable"
@@ -244,6 +352,7 @@ fun ConditionGroup.clickable(b: Boolean = true) = link(ClickableCondition(b))
 fun clickable(b: Boolean = true) = ClickableCondition(b)
 
 class CheckableCondition(b: Boolean) : BoolCondition(b) {
+    override val flag = NodeProps.FLAG_CHECKABLE
     override fun AcsNode.prop() = isCheckable
     override fun toString() = if (b) "Checkable" else "NotCheckable"
 }
@@ -255,6 +364,7 @@ fun ConditionGroup.checkable(b: Boolean = true) = link(CheckableCondition(b))
 fun checkable(b: Boolean = true) = CheckableCondition(b)
 
 class CheckedCondition(b: Boolean) : BoolCondition(b) {
+    override val flag = NodeProps.FLAG_CHECKED
     override fun AcsNode.prop() = checked == 1
     override fun toString() = if (b) "Checked" else "NotChecked"
 }
@@ -266,6 +376,7 @@ fun ConditionGroup.checked(b: Boolean = true) = link(CheckedCondition(b))
 fun checked(b: Boolean = true) = CheckedCondition(b)
 
 class DismissableCondition(b: Boolean) : BoolCondition(b) {
+    override val flag = NodeProps.FLAG_DISMISSABLE
     override fun AcsNode.prop() = isDismissable
 
     override fun toString() = if (b) "Dismissable" else "NotDismissable"
@@ -279,7 +390,8 @@ fun dismissable(b: Boolean = true) = DismissableCondition(b)
 
 
 class EditableCondition(b: Boolean) : BoolCondition(b) {
-    override fun AcsNode.prop(): Boolean = isEditable
+    override val flag = NodeProps.FLAG_EDITABLE
+    override fun AcsNode.prop() = isEditable
     override fun toString() = if (b) "Editable" else "NotEditable"
 }
 
@@ -290,6 +402,7 @@ fun ConditionGroup.editable(b: Boolean = true) = link(EditableCondition(b))
 fun editable(b: Boolean = true) = EditableCondition(b)
 
 class LongClickableCondition(b: Boolean) : BoolCondition(b) {
+    override val flag = NodeProps.FLAG_LONG_CLICKABLE
     override fun AcsNode.prop() = isLongClickable
     override fun toString() = if (b) "LongClickable" else "NotLongClickable"
 }
@@ -302,6 +415,7 @@ fun longClickable(b: Boolean = true) = LongClickableCondition(b)
 
 
 class EnabledCondition(b: Boolean) : BoolCondition(b) {
+    override val flag = NodeProps.FLAG_ENABLED
     override fun AcsNode.prop() = isEnabled
     override fun toString() = if (b) "Enabled" else "NotEnabled"
 }
@@ -314,6 +428,7 @@ fun enabled(b: Boolean = true) = EnabledCondition(b)
 
 
 class FocusableCondition(b: Boolean) : BoolCondition(b) {
+    override val flag = NodeProps.FLAG_FOCUSABLE
     override fun AcsNode.prop() = isFocusable
     override fun toString() = if (b) "Focusable" else "NotFocusable"
 }
@@ -325,6 +440,7 @@ fun ConditionGroup.focusable(b: Boolean = true) = link(FocusableCondition(b))
 fun focusable(b: Boolean = true) = FocusableCondition(b)
 
 class FocusedCondition(b: Boolean = true) : BoolCondition(b) {
+    override val flag = NodeProps.FLAG_FOCUSED
     override fun AcsNode.prop() = isFocused
     override fun toString() = if (b) "Focused" else "NotFocused"
 }
@@ -335,8 +451,10 @@ fun ConditionGroup.focused(b: Boolean = true) = link(FocusedCondition(b))
 @JvmOverloads
 fun focused(b: Boolean = true) = FocusedCondition(b)
 
-object HasChildCondition : MatchCondition {
-    override fun match(node: AcsNode) = node.childCount > 0
+object HasChildCondition : NodePropsCondition() {
+    override val cost = MatchCondition.COST_STRUCTURE
+
+    override fun match(node: NodeProps) = node.childCount > 0
     override fun toString() = "HasChild"
 }
 
@@ -344,21 +462,62 @@ fun ConditionGroup.hasChild() = link(HasChildCondition)
 
 fun hasChild() = HasChildCondition
 
-object NoChildCondition : MatchCondition {
-    override fun match(node: AcsNode) = node.childCount == 0
+object NoChildCondition : NodePropsCondition() {
+    override val cost = MatchCondition.COST_STRUCTURE
+
+    override fun match(node: NodeProps) = node.childCount == 0
     override fun toString() = "NoChild"
 }
 
 fun ConditionGroup.noChild() = link(NoChildCondition)
 fun noChild() = NoChildCondition
 
-class ClassNameCondition(private val clses: Array<out String>) : MatchCondition {
+// text 或 desc 非空，如 SF.hasText().findSimilar(text, k)
+object HasTextCondition : NodePropsCondition() {
+    override val cost = MatchCondition.COST_TEXT
+
+    override fun match(node: NodeProps) = !node.text.isNullOrEmpty() || !node.desc.isNullOrEmpty()
+    override fun toString() = "HasText"
+}
+
+fun ConditionGroup.hasText() = link(HasTextCondition)
+fun hasText() = HasTextCondition
+
+/**
+ * 节点键相等 @see NodeKey
+ */
+class KeyCondition(private val key: NodeKey) : NodePropsCondition(), IndexableCondition {
+    override val cost = MatchCondition.COST_ID
+
+    override fun candidates(index: SnapshotIndex) = index.byKey(key)
+
+    override fun match(node: NodeProps): Boolean {
+        if (node is TreeSnapshot.Cursor) return node.snapshot.keyAt(node.index) == key
+        if (node.acsNode.windowId != key.windowId) return false
+        return NodeKey.of(node) == key
+    }
+
+    override fun toString() = "KEY == $key"
+}
+
+fun ConditionGroup.key(key: NodeKey) = link(KeyCondition(key))
+fun key(key: NodeKey) = KeyCondition(key)
+
+class ClassNameCondition(
+    private val clses: Array<out String>
+) : NodePropsCondition(), IndexableCondition {
+    override val cost = MatchCondition.COST_CLASS
+
+    override fun candidates(index: SnapshotIndex) = clses.fold(SnapshotIndex.EMPTY) { r, c ->
+        SnapshotIndex.union(r, index.byClassNameContains(c))
+    }
+
     init {
         requireNotEmpty(clses)
     }
 
-    override fun match(node: AcsNode): Boolean {
-        val clsName = node.className?.toString() ?: return false
+    override fun match(node: NodeProps): Boolean {
+        val clsName = node.className ?: return false
         return clses.any { clsName.contains(it, ignoreCase = true) }
     }
 
@@ -369,6 +528,7 @@ fun ConditionGroup.type(vararg types: String) = link(ClassNameCondition(types))
 fun type(vararg types: String) = ClassNameCondition(types)
 
 class ScrollableCondition(b: Boolean) : BoolCondition(b) {
+    override val flag = NodeProps.FLAG_SCROLLABLE
     override fun AcsNode.prop() = isScrollable
     override fun toString() = if (b) "Scrollable" else "NotScrollable"
 
@@ -380,6 +540,7 @@ fun scrollable(b: Boolean = true) = ScrollableCondition(b)
 
 
 class SelectedCondition(b: Boolean) : BoolCondition(b) {
+    override val flag = NodeProps.FLAG_SELECTED
     override fun AcsNode.prop() = isSelected
     override fun toString() = if (b) "Selected" else "NotSelected"
 }
@@ -391,24 +552,28 @@ fun ConditionGroup.selected(b: Boolean = true) = link(SelectedCondition(b))
 fun selected(b: Boolean = true) = SelectedCondition(b)
 
 
-class DescStartWithsCondition(val text: String) : MatchCondition {
+class DescStartWithsCondition(val text: String) : NodePropsCondition() {
+    override val cost = MatchCondition.COST_TEXT
+
     init {
         if (text.isEmpty()) throw IllegalStateException("requireNotEmpty")
     }
 
-    override fun match(node: AcsNode) =
-        node.contentDescription?.toString()?.startsWith(text) ?: false
+    override fun match(node: NodeProps) =
+        node.desc?.startsWith(text) ?: false
 
     override fun toString() = "DESC startWiths $text"
 }
 
-class TextStartWithsCondition(val text: String) : MatchCondition {
+class TextStartWithsCondition(val text: String) : NodePropsCondition() {
+    override val cost = MatchCondition.COST_TEXT
+
     init {
         if (text.isEmpty()) throw IllegalStateException("requireNotEmpty")
     }
 
-    override fun match(node: AcsNode) =
-        node.text?.toString()?.startsWith(text) ?: false
+    override fun match(node: NodeProps) =
+        node.text?.startsWith(text) ?: false
 
     override fun toString() = "TEXT startWiths $text"
 }
@@ -417,14 +582,243 @@ fun ConditionGroup.descStartWiths(desc: String) = link(DescStartWithsCondition(d
 fun ConditionGroup.textStartWiths(text: String) = link(TextStartWithsCondition(text))
 
 
-class DisplayIdCondition(val displayId: Int) : MatchCondition {
+class DisplayIdCondition(val displayId: Int) : NodePropsCondition() {
+    override val cost = MatchCondition.COST_WINDOW
     override val canInterrupt = true
 
-    override fun match(node: AcsNode): Boolean {
-        return node.window?.displayId == displayId
+    override fun match(node: NodeProps): Boolean {
+        return node.displayId == displayId
     }
 
     override fun toString() = "DISPLAY_ID == $displayId"
 }
 
 fun ConditionGroup.displayId(displayId: Int) = link(DisplayIdCondition(displayId))
+
+
+/*
+ * 结构条件
+ * 父节点、兄弟位置来自遍历上下文 @see NodeProps.parent
+ * DFS / 迭代加深 / 快照模式下不产生额外 IPC，祖先属性在兄弟节点间共享
+ */
+
+// 结构条件内部匹配，不剪枝
+private fun MatchCondition.test(node: NodeProps) = match(node, AtomicBoolean(false))
+
+/**
+ * 父节点满足 [condition]
+ */
+class ParentCondition(internal val condition: MatchCondition) : NodePropsCondition() {
+    override val cost get() = MatchCondition.COST_STRUCTURE + condition.cost
+
+    override fun match(node: NodeProps): Boolean {
+        val p = node.parent ?: return false
+        return condition.test(p)
+    }
+
+    override fun toString() = "PARENT $condition"
+}
+
+fun ConditionGroup.parent(cond: MatchCondition) = link(ParentCondition(cond))
+fun parent(cond: MatchCondition) = ParentCondition(cond)
+
+/**
+ * 任一祖先节点满足 [condition]
+ * @param maxLevel 最多向上层数，父节点为 1
+ */
+class AncestorCondition @JvmOverloads constructor(
+    internal val condition: MatchCondition,
+    private val maxLevel: Int = Int.MAX_VALUE,
+) : NodePropsCondition() {
+    // 按平均向上 4 层估计
+    override val cost get() = (MatchCondition.COST_STRUCTURE + condition.cost) * 4
+
+    override fun match(node: NodeProps): Boolean {
+        var p = node.parent
+        var level = 1
+        while (p != null && level <= maxLevel) {
+            if (condition.test(p)) return true
+            p = p.parent
+            level++
+        }
+        return false
+    }
+
+    override fun toString() = if (maxLevel == Int.MAX_VALUE) "ANCESTOR $condition"
+    else "ANCESTOR(<=$maxLevel) $condition"
+}
+
+fun ConditionGroup.ancestor(cond: MatchCondition, maxLevel: Int = Int.MAX_VALUE) =
+    link(AncestorCondition(cond, maxLevel))
+
+@JvmOverloads
+fun ancestor(cond: MatchCondition, maxLevel: Int = Int.MAX_VALUE) =
+    AncestorCondition(cond, maxLevel)
+
+/**
+ * 任一兄弟节点（不含自身）满足 [condition]
+ */
+class SiblingCondition(internal val condition: MatchCondition) : NodePropsCondition() {
+    // 按平均 4 个兄弟节点估计
+    override val cost get() = (MatchCondition.COST_STRUCTURE + condition.cost) * 4
+
+    override fun match(node: NodeProps): Boolean {
+        val p = node.parent ?: return false
+        val self = node.acsNode
+        return p.anyChild { it.acsNode != self && condition.test(it) }
+    }
+
+    override fun toString() = "SIBLING $condition"
+}
+
+fun ConditionGroup.sibling(cond: MatchCondition) = link(SiblingCondition(cond))
+fun sibling(cond: MatchCondition) = SiblingCondition(cond)
+
+/**
+ * 存在满足 [condition] 的子孙节点
+ * 快照模式下为子树区间扫描；实时节点为有界遍历，子节点列表缓存在 ViewNode 上，之后的搜索复用
+ *
+ * @param maxDepth 最大相对深度，1 为只检查子节点
+ * @param maxNodes 最多检查的节点数
+ */
+class HasDescendantCondition @JvmOverloads constructor(
+    internal val condition: MatchCondition,
+    private val maxDepth: Int = Int.MAX_VALUE,
+    private val maxNodes: Int = FinderConfig.FINDER_DESCENDANT_MAX_NODES,
+) : NodePropsCondition() {
+    // 按平均 16 个子孙节点估计
+    override val cost get() = (MatchCondition.COST_STRUCTURE + condition.cost) * 16
+
+    override fun match(node: NodeProps): Boolean =
+        node.anyDescendant(maxDepth, maxNodes) { condition.test(it) }
+
+    override fun toString() = buildString {
+        append(if (maxDepth == 1) "HAS_CHILD" else "HAS_DESCENDANT")
+        val depth = if (maxDepth == Int.MAX_VALUE || maxDepth == 1) null else "depth<=$maxDepth"
+        val nodes = if (maxNodes == Int.MAX_VALUE) null else "nodes<=$maxNodes"
+        listOfNotNull(depth, nodes).takeIf { it.isNotEmpty() }?.joinTo(this, ", ", "(", ")")
+        append(' ').append(condition)
+    }
+}
+
+fun ConditionGroup.hasDescendant(cond: MatchCondition, maxDepth: Int = Int.MAX_VALUE) =
+    link(HasDescendantCondition(cond, maxDepth))
+
+@JvmOverloads
+fun hasDescendant(cond: MatchCondition, maxDepth: Int = Int.MAX_VALUE) =
+    HasDescendantCondition(cond, maxDepth)
+
+fun ConditionGroup.hasChild(cond: MatchCondition) = link(HasDescendantCondition(cond, 1))
+
+/**
+ * 在父节点可搜索子节点中的位置
+ * @param index 从 0 开始，负数从末尾计，-1 为最后一个
+ */
+class NthChildCondition(private val index: Int) : NodePropsCondition() {
+    override val cost = MatchCondition.COST_STRUCTURE
+
+    override fun match(node: NodeProps): Boolean {
+        val i = node.indexInParent
+        if (i < 0) return false
+        if (index >= 0) return i == index
+        var n = 0
+        node.parent?.anyChild {
+            n++
+            false
+        } ?: return false
+        return i == n + index
+    }
+
+    override fun toString() = "INDEX == $index"
+}
+
+fun ConditionGroup.nthChild(index: Int) = link(NthChildCondition(index))
+fun nthChild(index: Int) = NthChildCondition(index)
+
+
+/*
+ * 坐标条件，使用屏幕坐标
+ * 快照模式下由 SpatialIndex 给出候选节点
+ */
+
+// 匹配时复用，条件可能被多个线程同时使用
+private val tmpRect = object : ThreadLocal<Rect>() {
+    override fun initialValue() = Rect()
+}
+
+private fun NodeProps.bounds(): Rect = tmpRect.get()!!.also { getBounds(it) }
+
+/**
+ * 节点位于 [rect] 内
+ * @param fully true: 完全位于区域内；false: 与区域相交
+ */
+class InRectCondition @JvmOverloads constructor(
+    private val rect: Rect,
+    private val fully: Boolean = true,
+) : NodePropsCondition(), IndexableCondition {
+    override val cost = MatchCondition.COST_FLAG
+
+    override fun candidates(index: SnapshotIndex) = index.spatial.inRect(rect, fully)
+
+    override fun match(node: NodeProps): Boolean {
+        val b = node.bounds()
+        if (b.isEmpty) return false
+        return if (fully) rect.contains(b) else Rect.intersects(rect, b)
+    }
+
+    override fun toString() = if (fully) "BOUNDS in ${rect.toShortString()}"
+    else "BOUNDS intersects ${rect.toShortString()}"
+}
+
+fun ConditionGroup.inRect(rect: Rect, fully: Boolean = true) = link(InRectCondition(rect, fully))
+
+@JvmOverloads
+fun inRect(rect: Rect, fully: Boolean = true) = InRectCondition(rect, fully)
+
+/**
+ * 节点包含点 ([x], [y])
+ */
+class ContainsPointCondition(
+    private val x: Int,
+    private val y: Int,
+) : NodePropsCondition(), IndexableCondition {
+    override val cost = MatchCondition.COST_FLAG
+
+    override fun candidates(index: SnapshotIndex) = index.spatial.at(x, y)
+
+    override fun match(node: NodeProps) = node.bounds().contains(x, y)
+
+    override fun toString() = "BOUNDS contains ($x, $y)"
+}
+
+fun ConditionGroup.containsPoint(x: Int, y: Int) = link(ContainsPointCondition(x, y))
+fun containsPoint(x: Int, y: Int) = ContainsPointCondition(x, y)
+
+/**
+ * 节点到点 ([x], [y]) 的距离不超过 [radius]，点在节点内时距离为 0
+ * 取最近的节点使用 [ViewFinder.findNearest]
+ */
+class NearToCondition(
+    private val x: Int,
+    private val y: Int,
+    private val radius: Int,
+) : NodePropsCondition(), IndexableCondition {
+    override val cost = MatchCondition.COST_FLAG
+
+    override fun candidates(index: SnapshotIndex) = index.spatial.inRect(
+        Rect(x - radius - 1, y - radius - 1, x + radius + 1, y + radius + 1), fully = false
+    )
+
+    override fun match(node: NodeProps): Boolean {
+        val b = node.bounds()
+        if (b.isEmpty) return false
+        val dx = maxOf(b.left - x, 0, x - b.right).toLong()
+        val dy = maxOf(b.top - y, 0, y - b.bottom).toLong()
+        return dx * dx + dy * dy <= radius.toLong() * radius
+    }
+
+    override fun toString() = "BOUNDS near ($x, $y) <= $radius"
+}
+
+fun ConditionGroup.nearTo(x: Int, y: Int, radius: Int) = link(NearToCondition(x, y, radius))
+fun nearTo(x: Int, y: Int, radius: Int) = NearToCondition(x, y, radius)
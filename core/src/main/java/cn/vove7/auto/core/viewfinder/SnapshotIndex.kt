@@ -0,0 +1,193 @@
+package cn.vove7.auto.core.viewfinder
+
+import cn.vove7.auto.core.utils.foldChar
+
+/**
+ * # SnapshotIndex
+ * [TreeSnapshot] 的二级索引，首次查询时构建
+ *
+ * - id：资源 id 最后一个 `/` 之后的部分，忽略大小写
+ * - text / desc：忽略大小写
+ * - className / packageName：按不同取值分组
+ *
+ * 查询结果为升序（先序）的节点下标，可能多于实际匹配，
+ * 搜索时对候选节点仍执行完整条件匹配。
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+class SnapshotIndex internal constructor(private val snapshot: TreeSnapshot) {
+
+    private val ids: Map<String, IntArray>
+    private val texts: Map<String, IntArray>
+    private val descs: Map<String, IntArray>
+    private val classNames: Map<String, IntArray>
+    private val packages: Map<String, IntArray>
+
+    init {
+        val idB = HashMap<String, IntList>()
+        val textB = HashMap<String, IntList>()
+        val descB = HashMap<String, IntList>()
+        val classB = HashMap<String, IntList>()
+        val pkgB = HashMap<String, IntList>()
+        // index 0 为起始节点，不参与匹配
+        for (i in 1 until snapshot.size) {
+            snapshot.viewId(i)?.let { idB.post(it, i) }
+            snapshot.text(i)?.let { textB.post(it, i) }
+            snapshot.desc(i)?.let { descB.post(it, i) }
+            snapshot.className(i)?.let { classB.post(it, i) }
+            snapshot.packageName(i)?.let { pkgB.post(it, i) }
+        }
+        ids = idB.foldKeys { fold(it.substringAfterLast('/')) }
+        texts = textB.foldKeys(::fold)
+        descs = descB.foldKeys(::fold)
+        classNames = classB.foldKeys { it }
+        packages = pkgB.foldKeys { it }
+    }
+
+    /**
+     * 资源 id 匹配 `xxx:id/[id]` 或 [id] 的候选节点
+     */
+    fun byId(id: String): IntArray = ids[fold(id.substringAfterLast('/'))] ?: EMPTY
+
+    // 忽略大小写
+    fun byText(text: String): IntArray = texts[fold(text)] ?: EMPTY
+
+    // 忽略大小写
+    fun byDesc(desc: String): IntArray = descs[fold(desc)] ?: EMPTY
+
+    /**
+     * className 包含 [part]（忽略大小写）的节点
+     * 遍历不同的 className，数量远少于节点数
+     */
+    fun byClassNameContains(part: String): IntArray {
+        var r = EMPTY
+        for ((name, postings) in classNames) {
+            if (name.contains(part, ignoreCase = true)) r = union(r, postings)
+        }
+        return r
+    }
+
+    fun byPackage(pkg: String): IntArray = packages[pkg] ?: EMPTY
+
+    // @see TreeSnapshot.indexOfKey
+    fun byKey(key: NodeKey): IntArray {
+        val i = snapshot.indexOfKey(key)
+        return if (i > 0) intArrayOf(i) else EMPTY
+    }
+
+    // 坐标查询 @see TreeSnapshot.spatial
+    val spatial: SpatialIndex get() = snapshot.spatial
+
+    override fun toString() = "SnapshotIndex(ids=${ids.size}, texts=${texts.size}, " +
+            "descs=${descs.size}, classNames=${classNames.size}, packages=${packages.size})"
+
+    companion object {
+        @JvmField
+        val EMPTY = IntArray(0)
+
+        /**
+         * 大小写折叠，与 String.equals(ignoreCase = true) 一致：
+         * 忽略大小写相等的两个字符串折叠后相等
+         */
+        internal fun fold(s: String): String {
+            var i = 0
+            while (i < s.length && s[i] == foldChar(s[i])) i++
+            if (i == s.length) return s
+            val cs = s.toCharArray()
+            while (i < cs.size) {
+                cs[i] = foldChar(cs[i])
+                i++
+            }
+            return String(cs)
+        }
+
+        // 两个升序数组的并集
+        fun union(a: IntArray, b: IntArray): IntArray {
+            if (a.isEmpty()) return b
+            if (b.isEmpty()) return a
+            val r = IntArray(a.size + b.size)
+            var i = 0
+            var j = 0
+            var k = 0
+            while (i < a.size && j < b.size) {
+                val x = a[i]
+                val y = b[j]
+                r[k++] = if (x < y) {
+                    i++; x
+                } else if (y < x) {
+                    j++; y
+                } else {
+                    i++; j++; x
+                }
+            }
+            while (i < a.size) r[k++] = a[i++]
+            while (j < b.size) r[k++] = b[j++]
+            return if (k == r.size) r else r.copyOf(k)
+        }
+
+        // 两个升序数组的交集
+        fun intersect(a: IntArray, b: IntArray): IntArray {
+            if (a.isEmpty() || b.isEmpty()) return EMPTY
+            val r = IntArray(minOf(a.size, b.size))
+            var i = 0
+            var j = 0
+            var k = 0
+            while (i < a.size && j < b.size) {
+                val x = a[i]
+                val y = b[j]
+                when {
+                    x < y -> i++
+                    y < x -> j++
+                    else -> {
+                        r[k++] = x
+                        i++
+                        j++
+                    }
+                }
+            }
+            return if (k == r.size) r else r.copyOf(k)
+        }
+
+        private fun HashMap<String, IntList>.post(key: String, i: Int) {
+            getOrPut(key) { IntList() }.add(i)
+        }
+
+        // 合并折叠后相同的 key
+        private inline fun HashMap<String, IntList>.foldKeys(
+            key: (String) -> String
+        ): Map<String, IntArray> {
+            val m = HashMap<String, IntArray>(size * 2)
+            for ((k, l) in this) {
+                val fk = key(k)
+                val arr = l.toArray()
+                m[fk] = m[fk]?.let { union(it, arr) } ?: arr
+            }
+            return m
+        }
+    }
+
+    private class IntList {
+        private var data = IntArray(4)
+        private var size = 0
+
+        fun add(v: Int) {
+            if (size == data.size) data = data.copyOf(size * 2)
+            data[size++] = v
+        }
+
+        fun toArray(): IntArray = data.copyOf(size)
+    }
+}
+
+/**
+ * 可由 [SnapshotIndex] 给出候选节点的条件
+ * 快照模式下 [ConditionGroup] 对 AND 条件取候选交集，OR 取并集，
+ * 只在候选节点上执行匹配
+ */
+interface IndexableCondition {
+    /**
+     * @return 升序的候选节点下标，须包含所有可能匹配的节点
+     */
+    fun candidates(index: SnapshotIndex): IntArray
+}
@@ -0,0 +1,244 @@
+package cn.vove7.auto.core.viewfinder
+
+import android.graphics.Rect
+
+/**
+ * # SpatialIndex
+ * [TreeSnapshot] 节点屏幕坐标的均匀网格索引，首次查询时构建
+ *
+ * 每个节点登记在其 bounds 覆盖的所有格子中（CSR 存储），查询只检查相关格子：
+ * - [at]：包含某点的节点
+ * - [inRect]：位于 / 相交于某区域的节点
+ * - [nearest]：距某点最近的 k 个节点，按环形向外扩展格子
+ *
+ * 结果均为快照下标，空 bounds 节点不登记；index 0（起始节点）不参与查询
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+class SpatialIndex internal constructor(
+    private val snapshot: TreeSnapshot,
+    cellSize: Int = FinderConfig.FINDER_SPATIAL_CELL_SIZE,
+) {
+    private val originX: Int
+    private val originY: Int
+    private val cellW: Int
+    private val cellH: Int
+    private val cols: Int
+    private val rows: Int
+
+    // 格子 c 的节点为 cellNodes[cellStart[c] until cellStart[c + 1]]，升序
+    private val cellStart: IntArray
+    private val cellNodes: IntArray
+
+    init {
+        var minX = Int.MAX_VALUE
+        var minY = Int.MAX_VALUE
+        var maxX = Int.MIN_VALUE
+        var maxY = Int.MIN_VALUE
+        for (i in 1 until snapshot.size) {
+            if (isEmpty(i)) continue
+            minX = minOf(minX, snapshot.left(i))
+            minY = minOf(minY, snapshot.top(i))
+            maxX = maxOf(maxX, snapshot.right(i))
+            maxY = maxOf(maxY, snapshot.bottom(i))
+        }
+        if (minX > maxX) {
+            minX = 0; minY = 0; maxX = 1; maxY = 1
+        }
+        originX = minX
+        originY = minY
+        // 超长滚动内容等情况下限制格子数
+        cellW = maxOf(cellSize, (maxX - minX + MAX_CELLS - 1) / MAX_CELLS, 1)
+        cellH = maxOf(cellSize, (maxY - minY + MAX_CELLS - 1) / MAX_CELLS, 1)
+        cols = (maxX - minX + cellW - 1) / cellW + 1
+        rows = (maxY - minY + cellH - 1) / cellH + 1
+
+        val counts = IntArray(cols * rows + 1)
+        forEachCell { _, c -> counts[c + 1]++ }
+        for (c in 1 until counts.size) counts[c] += counts[c - 1]
+        cellStart = counts
+        cellNodes = IntArray(counts.last())
+        val fill = counts.copyOf(cols * rows)
+        forEachCell { i, c -> cellNodes[fill[c]++] = i }
+    }
+
+    private inline fun forEachCell(block: (Int, Int) -> Unit) {
+        for (i in 1 until snapshot.size) {
+            if (isEmpty(i)) continue
+            val c0 = col(snapshot.left(i))
+            val c1 = col(snapshot.right(i) - 1)
+            val r0 = row(snapshot.top(i))
+            val r1 = row(snapshot.bottom(i) - 1)
+            for (r in r0..r1) for (c in c0..c1) block(i, r * cols + c)
+        }
+    }
+
+    private fun isEmpty(i: Int) =
+        snapshot.right(i) <= snapshot.left(i) || snapshot.bottom(i) <= snapshot.top(i)
+
+    private fun col(x: Int) = ((x - originX) / cellW).coerceIn(0, cols - 1)
+    private fun row(y: Int) = ((y - originY) / cellH).coerceIn(0, rows - 1)
+
+    /**
+     * 包含点 (x, y) 的节点，升序（先序），最后一个为最深层
+     */
+    fun at(x: Int, y: Int): IntArray {
+        if (!inGrid(x, y)) return SnapshotIndex.EMPTY
+        val c = row(y) * cols + col(x)
+        val r = IntArray(cellStart[c + 1] - cellStart[c])
+        var k = 0
+        for (j in cellStart[c] until cellStart[c + 1]) {
+            val i = cellNodes[j]
+            if (contains(i, x, y)) r[k++] = i
+        }
+        return if (k == r.size) r else r.copyOf(k)
+    }
+
+    /**
+     * 区域内的节点，升序
+     * @param fully true: 完全位于区域内；false: 与区域相交
+     */
+    fun inRect(rect: Rect, fully: Boolean = true): IntArray {
+        if (rect.isEmpty) return SnapshotIndex.EMPTY
+        val seen = BooleanArray(snapshot.size)
+        var r = IntArray(16)
+        var k = 0
+        for (row in row(rect.top)..row(rect.bottom - 1)) {
+            for (col in col(rect.left)..col(rect.right - 1)) {
+                val c = row * cols + col
+                for (j in cellStart[c] until cellStart[c + 1]) {
+                    val i = cellNodes[j]
+                    if (seen[i]) continue
+                    seen[i] = true
+                    val hit = if (fully) {
+                        snapshot.left(i) >= rect.left && snapshot.top(i) >= rect.top &&
+                                snapshot.right(i) <= rect.right && snapshot.bottom(i) <= rect.bottom
+                    } else {
+                        snapshot.left(i) < rect.right && rect.left < snapshot.right(i) &&
+                                snapshot.top(i) < rect.bottom && rect.top < snapshot.bottom(i)
+                    }
+                    if (!hit) continue
+                    if (k == r.size) r = r.copyOf(k * 2)
+                    r[k++] = i
+                }
+            }
+        }
+        r = r.copyOf(k)
+        r.sort()
+        return r
+    }
+
+    /**
+     * 距点 (x, y) 最近的 [k] 个满足 [filter] 的节点，按距离升序，距离相同时按先序
+     * 点在节点内时距离为 0
+     */
+    fun nearest(x: Int, y: Int, k: Int, filter: (Int) -> Boolean = { true }): IntArray {
+        if (k <= 0) return SnapshotIndex.EMPTY
+        val heap = TopK(k)
+        val seen = BooleanArray(snapshot.size)
+        val cx = col(x)
+        val cy = row(y)
+        val step = minOf(cellW, cellH).toLong()
+        val maxRing = maxOf(cols, rows)
+        for (ring in 0..maxRing) {
+            // 未检查的节点位于 ring 及之外的格子，距离不小于 (ring - 1) * step
+            if (heap.full && heap.worst < sq(ring * step - step)) break
+            for (r in cy - ring..cy + ring) {
+                if (r < 0 || r >= rows) continue
+                val edge = r == cy - ring || r == cy + ring
+                var c = cx - ring
+                while (c <= cx + ring) {
+                    if (c in 0 until cols) {
+                        val cell = r * cols + c
+                        for (j in cellStart[cell] until cellStart[cell + 1]) {
+                            val i = cellNodes[j]
+                            if (seen[i]) continue
+                            seen[i] = true
+                            val d = distanceSq(i, x, y)
+                            if (heap.accepts(d, i) && filter(i)) heap.offer(d, i)
+                        }
+                    }
+                    c = if (edge || c == cx + ring) c + 1 else cx + ring
+                }
+            }
+        }
+        return heap.sorted()
+    }
+
+    /**
+     * 点 (x, y) 到节点 [i] bounds 的距离平方
+     */
+    fun distanceSq(i: Int, x: Int, y: Int): Long {
+        val dx = maxOf(snapshot.left(i) - x, 0, x - snapshot.right(i)).toLong()
+        val dy = maxOf(snapshot.top(i) - y, 0, y - snapshot.bottom(i)).toLong()
+        return dx * dx + dy * dy
+    }
+
+    private fun contains(i: Int, x: Int, y: Int) =
+        x >= snapshot.left(i) && x < snapshot.right(i) &&
+                y >= snapshot.top(i) && y < snapshot.bottom(i)
+
+    private fun inGrid(x: Int, y: Int) = x >= originX && y >= originY &&
+            x < originX + cols * cellW && y < originY + rows * cellH
+
+    private fun sq(v: Long) = if (v <= 0) 0L else v * v
+
+    override fun toString() = "SpatialIndex(grid=${cols}x$rows, cell=${cellW}x$cellH, " +
+            "entries=${cellNodes.size})"
+
+    // 大小为 k 的最大堆，堆顶为当前第 k 近
+    private class TopK(private val k: Int) {
+        private val dists = LongArray(k)
+        private val nodes = IntArray(k)
+        private var size = 0
+
+        val full get() = size == k
+        val worst get() = dists[0]
+
+        fun accepts(d: Long, i: Int) = !full || less(d, i, dists[0], nodes[0])
+
+        fun offer(d: Long, i: Int) {
+            if (!full) {
+                var c = size++
+                while (c > 0) {
+                    val p = (c - 1) / 2
+                    if (!less(dists[p], nodes[p], d, i)) break
+                    dists[c] = dists[p]
+                    nodes[c] = nodes[p]
+                    c = p
+                }
+                dists[c] = d
+                nodes[c] = i
+                return
+            }
+            var c = 0
+            while (true) {
+                var m = 2 * c + 1
+                if (m >= size) break
+                if (m + 1 < size && less(dists[m], nodes[m], dists[m + 1], nodes[m + 1])) m++
+                if (!less(d, i, dists[m], nodes[m])) break
+                dists[c] = dists[m]
+                nodes[c] = nodes[m]
+                c = m
+            }
+            dists[c] = d
+            nodes[c] = i
+        }
+
+        fun sorted(): IntArray {
+            val order = (0 until size).sortedWith { a, b ->
+                if (dists[a] != dists[b]) dists[a].compareTo(dists[b]) else nodes[a] - nodes[b]
+            }
+            return IntArray(size) { nodes[order[it]] }
+        }
+
+        private fun less(d1: Long, i1: Int, d2: Long, i2: Int) =
+            d1 < d2 || (d1 == d2 && i1 < i2)
+    }
+
+    private companion object {
+        // 每个方向最多格子数
+        const val MAX_CELLS = 64
+    }
+}
@@ -0,0 +1,75 @@
+package cn.vove7.auto.core.viewfinder
+
+import android.os.SystemClock
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * # TraverseStrategy
+ * ViewFinder 遍历策略
+ *
+ * 深度：起始节点为 0，其子节点为 1
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+enum class TraverseStrategy {
+    // 深度优先（先序），默认
+    DFS,
+
+    // 广度优先，findFirst 返回深度最小的节点；队列会持有整层节点
+    BFS,
+
+    // 迭代加深，结果顺序同 BFS，内存同 DFS；浅层节点会重复走过，但不重复匹配
+    ITERATIVE_DEEPENING,
+}
+
+/**
+ * 一次搜索（findFirst / findAll）的遍历统计
+ *
+ * @property visited 执行条件匹配的节点数
+ * @property budgetExhausted 是否因 maxNodes 提前结束
+ */
+class TraverseStats(
+    val strategy: TraverseStrategy,
+    val visited: Int,
+    val budgetExhausted: Boolean,
+    val elapsedMillis: Long,
+) {
+    override fun toString(): String {
+        return "TraverseStats(strategy=$strategy, visited=$visited, " +
+                "budgetExhausted=$budgetExhausted, elapsed=${elapsedMillis}ms)"
+    }
+}
+
+/**
+ * 遍历预算及计数，多窗口并行搜索时共享
+ * @param maxDepth 最大深度，超过的节点不匹配也不获取
+ * @param maxNodes 最多匹配的节点数
+ */
+internal class TraverseBudget(val maxDepth: Int, val maxNodes: Int) {
+    private val count = AtomicInteger()
+
+    val beginTime: Long = SystemClock.elapsedRealtime()
+
+    @Volatile
+    var exhausted = false
+        private set
+
+    val visited: Int get() = count.get()
+
+    /**
+     * 计数一个节点
+     * @return 超出预算返回 false
+     */
+    fun visit(): Boolean {
+        if (count.incrementAndGet() > maxNodes) {
+            count.decrementAndGet()
+            exhausted = true
+            return false
+        }
+        return true
+    }
+
+    // depth 层节点的子节点是否在深度限制内
+    fun canDescend(depth: Int): Boolean = depth < maxDepth
+}
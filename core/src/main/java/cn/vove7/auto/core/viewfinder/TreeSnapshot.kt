@@ -0,0 +1,440 @@
+package cn.vove7.auto.core.viewfinder
+
+import android.graphics.Rect
+import android.os.Build
+import android.os.SystemClock
+import android.view.accessibility.AccessibilityNodeInfo
+import cn.vove7.auto.core.viewnode.NodeIdentity
+import cn.vove7.auto.core.viewnode.ViewNode
+
+/**
+ * # TreeSnapshot
+ * 视图树快照
+ *
+ * 一次性捕获整个视图层级（按先序存储），之后的条件匹配只读取快照数据，
+ * 不再对每个节点产生 IPC。
+ * 返回的 [ViewNode] 在需要时才创建，操作时仍作用于实际视图。
+ * 数据以列式存储 @see NodeStore
+ *
+ * index 0 为起始节点，不参与匹配
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+class TreeSnapshot private constructor(
+    val includeInvisible: Boolean,
+    private val store: NodeStore,
+    // 起始节点为多窗口根节点
+    private val windowsRoot: Boolean,
+) {
+    // 捕获时间 SystemClock.elapsedRealtime()
+    val captureTime: Long = SystemClock.elapsedRealtime()
+
+    val size: Int get() = store.size
+
+    // 字符串池大小
+    val stringCount: Int get() = store.pool.size
+
+    private val viewNodes = arrayOfNulls<ViewNode>(store.size)
+
+    fun parent(index: Int): Int = store.parents[index]
+    fun depth(index: Int): Int = store.depths[index]
+
+    // 子树结束位置（不包含）
+    fun subtreeEnd(index: Int): Int = store.subtreeEnds[index]
+
+    fun text(index: Int): String? = store.string(store.texts, index)
+    fun desc(index: Int): String? = store.string(store.descs, index)
+    fun className(index: Int): String? = store.string(store.classNames, index)
+    fun viewId(index: Int): String? = store.string(store.viewIds, index)
+    fun packageName(index: Int): String? = store.string(store.packageNames, index)
+    fun childCount(index: Int): Int = store.childCounts[index]
+    fun displayId(index: Int): Int = store.displayIds[index]
+    fun flags(index: Int): Int = store.flags[index]
+    fun flag(index: Int, flag: Int): Boolean = store.flags[index] and flag == flag
+
+    fun getBounds(index: Int, out: Rect) = store.getBounds(index, out)
+
+    fun left(index: Int): Int = store.bounds[index shl 2]
+    fun top(index: Int): Int = store.bounds[(index shl 2) + 1]
+    fun right(index: Int): Int = store.bounds[(index shl 2) + 2]
+    fun bottom(index: Int): Int = store.bounds[(index shl 2) + 3]
+
+    fun acsNodeAt(index: Int): AcsNode = AcsNode.wrap(store.infos[index]!!)
+
+    /**
+     * 快照节点对应的 [ViewNode]，首次访问时创建
+     */
+    fun viewNodeAt(index: Int): ViewNode {
+        return viewNodes[index] ?: NodeIdentity.obtain(store.infos[index]!!).also {
+            viewNodes[index] = it
+        }
+    }
+
+    fun cursor(index: Int = 0) = Cursor(index)
+
+    /**
+     * 二级索引，首次访问时构建
+     */
+    val index: SnapshotIndex by lazy { SnapshotIndex(this) }
+
+    /**
+     * 节点坐标网格索引，首次访问时构建
+     */
+    val spatial: SpatialIndex by lazy { SpatialIndex(this) }
+
+    private val indexMap: Map<AccessibilityNodeInfo, Int> by lazy {
+        HashMap<AccessibilityNodeInfo, Int>(size * 2).also { m ->
+            for (i in 0 until size) m[store.infos[i]!!] = i
+        }
+    }
+
+    /**
+     * 节点在快照中的位置，按 windowId + sourceNodeId 比较
+     * @return 不存在返回 -1
+     */
+    fun indexOf(info: AccessibilityNodeInfo): Int = indexMap[info] ?: -1
+
+    // 各节点的 NodeKey，结构路径按先序由父节点路径得到
+    private val keys: Array<NodeKey> by lazy {
+        val r = arrayOfNulls<NodeKey>(size)
+        if (NodeIdentity.sourceIdAvailable) {
+            for (i in 0 until size) {
+                val info = store.infos[i]!!
+                val sid = if (i == 0 && windowsRoot) null else NodeIdentity.sourceNodeId(info)
+                r[i] = if (sid != null) NodeKey.of(info.windowId, sid) else NodeKey.of(cursor(i))
+            }
+        } else {
+            val paths = arrayOfNulls<String>(size)
+            // 已出现的子节点数
+            val pos = IntArray(size)
+            for (i in 0 until size) {
+                val p = parent(i)
+                val path = when {
+                    i == 0 -> if (windowsRoot) "" else NodeKey.of(LiveNodeProps(acsNodeAt(0))).path!!
+                    p == 0 && windowsRoot -> NodeKey.segment(className(i), -1, viewId(i))
+                    else -> paths[p] + "/" + NodeKey.segment(className(i), pos[p]++, viewId(i))
+                }
+                paths[i] = path
+                r[i] = NodeKey.structural(store.infos[i]!!.windowId, path)
+            }
+        }
+        @Suppress("UNCHECKED_CAST")
+        r as Array<NodeKey>
+    }
+
+    private val keyIndex: Map<NodeKey, Int> by lazy {
+        HashMap<NodeKey, Int>(size * 2).also { m ->
+            for (i in size - 1 downTo 0) m[keys[i]] = i
+        }
+    }
+
+    fun keyAt(index: Int): NodeKey = keys[index]
+
+    /**
+     * 键对应的节点位置，O(1)
+     * @return 不存在返回 -1
+     */
+    fun indexOfKey(key: NodeKey): Int = keyIndex[key] ?: -1
+
+    /**
+     * 与旧快照按 [NodeKey] 比较
+     * 对应节点的 text / desc / className / viewId / flags / bounds / childCount 不同时为 changed
+     */
+    fun diff(old: TreeSnapshot): SnapshotDiff {
+        val matched = BooleanArray(old.size)
+        var added = IntArray(8)
+        var addedSize = 0
+        var changed = IntArray(8)
+        var changedSize = 0
+        for (i in 1 until size) {
+            val j = old.indexOfKey(keyAt(i))
+            if (j <= 0) {
+                if (addedSize == added.size) added = added.copyOf(addedSize * 2)
+                added[addedSize++] = i
+                continue
+            }
+            matched[j] = true
+            if (!sameContent(i, old, j)) {
+                if (changedSize == changed.size) changed = changed.copyOf(changedSize * 2)
+                changed[changedSize++] = i
+            }
+        }
+        val removed = (1 until old.size).filter { !matched[it] }.toIntArray()
+        return SnapshotDiff(added.copyOf(addedSize), removed, changed.copyOf(changedSize))
+    }
+
+    private fun sameContent(i: Int, old: TreeSnapshot, j: Int): Boolean {
+        if (flags(i) != old.flags(j) || childCount(i) != old.childCount(j)) return false
+        if (left(i) != old.left(j) || top(i) != old.top(j) ||
+            right(i) != old.right(j) || bottom(i) != old.bottom(j)
+        ) return false
+        return text(i) == old.text(j) && desc(i) == old.desc(j) &&
+                className(i) == old.className(j) && viewId(i) == old.viewId(j)
+    }
+
+    /**
+     * 局部更新快照
+     * 未变化的节点直接复制，不产生 IPC；变化的节点读取刷新后的副本，当前快照不变
+     *
+     * @param dirtySubtrees 需要重新捕获的子树根节点
+     * @param dirtyNodes 仅属性变化的节点
+     * @return 新快照；无法定位变化位置时返回 null，需要完整捕获
+     */
+    internal fun update(
+        dirtySubtrees: Collection<AccessibilityNodeInfo>,
+        dirtyNodes: Collection<AccessibilityNodeInfo>,
+        check: () -> Unit
+    ): TreeSnapshot? {
+        val subtreeMark = BooleanArray(size)
+        val nodeMark = BooleanArray(size)
+        for (info in dirtySubtrees) {
+            val i = locate(info)
+            if (i <= 0) return null
+            subtreeMark[i] = true
+        }
+        for (info in dirtyNodes) {
+            // 未捕获的节点（如不可见）忽略
+            val i = indexOf(info)
+            if (i > 0) nodeMark[i] = true
+        }
+        val builder = Builder(includeInvisible, check)
+        builder.copyFrom(this, subtreeMark, nodeMark)
+        builder.store.trim()
+        return TreeSnapshot(includeInvisible, builder.store, windowsRoot)
+    }
+
+    // 向上查找已捕获的祖先节点
+    private fun locate(info: AccessibilityNodeInfo): Int {
+        var p: AccessibilityNodeInfo? = info
+        var level = 0
+        while (p != null && level < MAX_LOCATE_LEVEL) {
+            val i = indexOf(p)
+            if (i >= 0) return i
+            p = p.parent
+            level++
+        }
+        return -1
+    }
+
+    /**
+     * 快照节点属性游标，遍历时复用
+     */
+    inner class Cursor(var index: Int) : NodeProps {
+        val snapshot: TreeSnapshot get() = this@TreeSnapshot
+
+        override val acsNode: AcsNode get() = acsNodeAt(index)
+        override val text: CharSequence? get() = snapshot.text(index)
+        override val desc: CharSequence? get() = snapshot.desc(index)
+        override val className: CharSequence? get() = snapshot.className(index)
+        override val viewId: String? get() = snapshot.viewId(index)
+        override val packageName: CharSequence? get() = snapshot.packageName(index)
+        override val childCount: Int get() = snapshot.childCount(index)
+        override val displayId: Int get() = snapshot.displayId(index)
+        override fun flag(flag: Int): Boolean = snapshot.flag(index, flag)
+        override fun getBounds(out: Rect) = snapshot.getBounds(index, out)
+
+        private var parentCursor: Cursor? = null
+        private var childCursor: Cursor? = null
+
+        override val parent: NodeProps?
+            get() {
+                val p = snapshot.parent(index)
+                if (p < 0 || (p == 0 && windowsRoot)) return null
+                return (parentCursor ?: Cursor(p).also { parentCursor = it }).also { it.index = p }
+            }
+
+        // 按子树跳过，O(兄弟节点数)，不产生 IPC
+        override val indexInParent: Int
+            get() {
+                val p = snapshot.parent(index)
+                if (p < 0) return -1
+                var c = p + 1
+                var i = 0
+                while (c < index) {
+                    c = snapshot.subtreeEnd(c)
+                    i++
+                }
+                return i
+            }
+
+        override fun anyChild(predicate: (NodeProps) -> Boolean): Boolean {
+            val cur = childCursor ?: Cursor(0).also { childCursor = it }
+            val end = snapshot.subtreeEnd(index)
+            var c = index + 1
+            while (c < end) {
+                cur.index = c
+                if (predicate(cur)) return true
+                c = snapshot.subtreeEnd(c)
+            }
+            return false
+        }
+
+        // 子树为连续区间，顺序扫描
+        override fun anyDescendant(
+            maxDepth: Int, maxNodes: Int, predicate: (NodeProps) -> Boolean
+        ): Boolean {
+            val cur = childCursor ?: Cursor(0).also { childCursor = it }
+            val end = snapshot.subtreeEnd(index)
+            val base = snapshot.depth(index)
+            var c = index + 1
+            var count = 0
+            while (c < end && count < maxNodes) {
+                cur.index = c
+                if (predicate(cur)) return true
+                count++
+                c = if (snapshot.depth(c) - base >= maxDepth) snapshot.subtreeEnd(c) else c + 1
+            }
+            return false
+        }
+    }
+
+    override fun toString() = "TreeSnapshot(size=$size, includeInvisible=$includeInvisible)"
+
+    companion object {
+        private const val MAX_LOCATE_LEVEL = 8
+
+        /**
+         * 捕获 [root] 下的视图层级
+         * @param includeInvisible 为 false 时不捕获不可见节点及其子树
+         * @param check 取消检查，每个节点调用一次
+         */
+        fun capture(
+            root: ViewNode,
+            includeInvisible: Boolean,
+            check: () -> Unit = {}
+        ): TreeSnapshot {
+            val builder = Builder(includeInvisible, check)
+            builder.addRoot(root)
+            builder.store.trim()
+            return TreeSnapshot(includeInvisible, builder.store, root.isWindowsRoot)
+        }
+    }
+
+    private class Builder(
+        val includeInvisible: Boolean,
+        val check: () -> Unit
+    ) {
+        val store = NodeStore()
+        val visited = HashSet<AccessibilityNodeInfo>()
+
+        fun addRoot(root: ViewNode) {
+            val rootInfo = root.node.unwrap()
+            store.add(rootInfo, -1, 0, -1)
+            visited.add(rootInfo)
+            // 第一层使用 ViewNode.children，兼容多窗口根节点
+            val rootDisplay = if (root.isWindowsRoot) -1 else root.node.window?.displayId ?: -1
+            root.children.forEach { child ->
+                val info = child?.node?.unwrap() ?: return@forEach
+                val displayId = if (root.isWindowsRoot) {
+                    child.node.window?.displayId ?: -1
+                } else rootDisplay
+                add(info, 0, 1, displayId)
+            }
+            store.setSubtreeEnd(0, store.size)
+        }
+
+        fun copyFrom(old: TreeSnapshot, subtreeMark: BooleanArray, nodeMark: BooleanArray) {
+            val oldStore = old.store
+            store.copy(oldStore, 0, -1, 0)
+            visited.add(oldStore.infos[0]!!)
+            copyChildren(old, 0, 0, subtreeMark, nodeMark)
+            store.setSubtreeEnd(0, store.size)
+        }
+
+        private fun copyChildren(
+            old: TreeSnapshot, oldIndex: Int, newIndex: Int,
+            subtreeMark: BooleanArray, nodeMark: BooleanArray
+        ) {
+            val depth = store.depths[newIndex] + 1
+            val end = old.subtreeEnd(oldIndex)
+            var j = oldIndex + 1
+            while (j < end) {
+                copyNode(old, j, newIndex, depth, subtreeMark, nodeMark)
+                j = old.subtreeEnd(j)
+            }
+        }
+
+        private fun copyNode(
+            old: TreeSnapshot, j: Int, parent: Int, depth: Int,
+            subtreeMark: BooleanArray, nodeMark: BooleanArray
+        ) {
+            check()
+            val info = old.store.infos[j]!!
+            val displayId = old.displayId(j)
+            when {
+                subtreeMark[j] -> {
+                    // 节点已移除时为 null
+                    fresh(info)?.let { add(it, parent, depth, displayId) }
+                }
+                nodeMark[j] -> {
+                    val node = fresh(info) ?: return
+                    if (node.childCount != old.childCount(j)) {
+                        add(node, parent, depth, displayId)
+                        return
+                    }
+                    if (!includeInvisible && !node.isVisibleToUser) return
+                    if (!visited.add(node)) return
+                    val i = store.add(node, parent, depth, displayId)
+                    copyChildren(old, j, i, subtreeMark, nodeMark)
+                    store.setSubtreeEnd(i, store.size)
+                }
+                else -> {
+                    if (!visited.add(info)) return
+                    val i = store.copy(old.store, j, parent, depth)
+                    copyChildren(old, j, i, subtreeMark, nodeMark)
+                    store.setSubtreeEnd(i, store.size)
+                }
+            }
+        }
+
+        private fun add(info: AccessibilityNodeInfo, parent: Int, depth: Int, displayId: Int) {
+            check()
+            if (!includeInvisible && !info.isVisibleToUser) return
+            if (!visited.add(info)) return
+            val index = store.add(info, parent, depth, displayId)
+            for (i in 0 until store.childCounts[index]) {
+                val child = getChild(info, i) ?: continue
+                add(child, index, depth + 1, displayId)
+            }
+            store.setSubtreeEnd(index, store.size)
+        }
+
+        // 刷新副本，旧快照及已返回的 ViewNode 持有的节点保持不变；节点已移除时返回 null
+        private fun fresh(info: AccessibilityNodeInfo): AccessibilityNodeInfo? {
+            val copy = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                AccessibilityNodeInfo(info)
+            } else {
+                @Suppress("DEPRECATION")
+                AccessibilityNodeInfo.obtain(info)
+            }
+            return if (copy.refresh()) copy else null
+        }
+
+        private fun getChild(info: AccessibilityNodeInfo, i: Int): AccessibilityNodeInfo? = try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                // 预取子孙节点，后续 getChild 命中缓存
+                info.getChild(i, AccessibilityNodeInfo.FLAG_PREFETCH_DESCENDANTS_DEPTH_FIRST)
+            } else info.getChild(i)
+        } catch (e: IllegalStateException) {
+            null
+        }
+    }
+}
+
+/**
+ * [TreeSnapshot.diff] 结果，均为升序
+ * @property added 新快照中新增的节点
+ * @property removed 旧快照中已不存在的节点
+ * @property changed 新快照中内容改变的节点
+ */
+class SnapshotDiff(
+    val added: IntArray,
+    val removed: IntArray,
+    val changed: IntArray,
+) {
+    val isEmpty: Boolean get() = added.isEmpty() && removed.isEmpty() && changed.isEmpty()
+
+    override fun toString() =
+        "SnapshotDiff(added=${added.size}, removed=${removed.size}, changed=${changed.size})"
+}
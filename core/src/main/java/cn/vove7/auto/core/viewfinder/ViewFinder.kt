@@ -1,17 +1,45 @@
 package cn.vove7.auto.core.viewfinder
 
+import android.os.SystemClock
+import cn.vove7.auto.core.AccessibilityEvents
 import cn.vove7.auto.core.utils.ViewNodeNotFoundException
 import cn.vove7.auto.core.utils.ensureActive
 import cn.vove7.auto.core.utils.ensureNotInterrupt
-import cn.vove7.auto.core.utils.whileWaitTime
 import cn.vove7.auto.core.viewnode.ViewNode
 import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.currentCoroutineContext
 import kotlinx.coroutines.delay
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeoutOrNull
 import timber.log.Timber
 import java.util.concurrent.atomic.AtomicBoolean
 import kotlin.math.max
 import kotlin.math.min
 
+// traverseCandidates 祖先剪枝状态
+private const val STATE_UNKNOWN: Byte = 0
+private const val STATE_OPEN: Byte = 1
+private const val STATE_PRUNED: Byte = 2
+
+// ResultCache 键中的结果类型
+private const val KIND_FIRST = 'F'
+private const val KIND_ALL = 'A'
+
+// 多窗口并行搜索使用的调度器，并行数 FinderConfig.FINDER_WINDOW_PARALLELISM
+@OptIn(ExperimentalCoroutinesApi::class)
+private val windowDispatcher: CoroutineDispatcher by lazy {
+    Dispatchers.IO.limitedParallelism(FinderConfig.FINDER_WINDOW_PARALLELISM)
+}
+
 /**
  * 查找符合条件的AccessibilityNodeInfo
  * @param node 开始节点
@@ -23,7 +51,7 @@ abstract class ViewFinder<T : ViewFinder<T>>(
     @Suppress("PropertyName")
     val DEBUG = FinderConfig.DEBUG_LOG
 
-    val startNode: ViewNode get() = node ?: ViewNode.getRoot()
+    val startNode: ViewNode get() = node ?: ViewNode.getRoot(effectiveWindowFilter())
 
     // startNode 为 ViewNode.getRoot() 时，SDK_INT >= LOLLIPOP 搜索失败时，
     // 尝试走 SDK_INT < LOLLIPOP ViewNode.activeWinNode() 节点
@@ -32,6 +60,54 @@ abstract class ViewFinder<T : ViewFinder<T>>(
 
     private var includeInvisible: Boolean = FinderConfig.FINDER_INCLUDE_INVISIBLE
 
+    // 快照模式，先捕获视图树再匹配 @see TreeSnapshot
+    private var useSnapshot: Boolean = FinderConfig.FINDER_USE_SNAPSHOT
+
+    // 事件驱动等待 @see waitUntil
+    private var waitByEvent: Boolean = FinderConfig.FINDER_WAIT_BY_EVENT
+
+    // 窗口过滤，仅从根节点搜索时有效 @see WindowFilter
+    private var windowFilter: WindowFilter? = null
+
+    // 多窗口并行搜索 @see traverseWindows
+    private var parallelWindows: Boolean = FinderConfig.FINDER_PARALLEL_WINDOWS
+
+    // 遍历策略及预算 @see TraverseStrategy
+    private var strategy: TraverseStrategy = FinderConfig.FINDER_TRAVERSE_STRATEGY
+    private var maxDepth: Int = FinderConfig.FINDER_MAX_DEPTH
+    private var maxNodes: Int = FinderConfig.FINDER_MAX_NODES
+
+    // 结果缓存 @see ResultCache
+    private var cacheResult: Boolean = FinderConfig.FINDER_RESULT_CACHE
+
+    // 绑定模式 @see bind
+    private var bindMode: Boolean = FinderConfig.FINDER_BIND_NODE
+
+    @Volatile
+    private var boundNode: ViewNode? = null
+
+    // 绑定时的视图版本
+    @Volatile
+    private var boundGeneration: Long = 0
+
+    // 绑定时的搜索范围及参数 @see bindScope
+    @Volatile
+    private var boundScope: List<Any?>? = null
+
+    /**
+     * 最近一次 findFirst / findAll 的遍历统计
+     */
+    @Volatile
+    var lastTraverseStats: TraverseStats? = null
+        private set
+
+    /**
+     * 最近一次 waitFor / waitHide 的统计
+     */
+    @Volatile
+    var lastWaitStats: WaitStats? = null
+        private set
+
     /**
      * 等待搜索，在指定时间内循环搜索（视图更新），超时返回null
      * 等待View出现 同步 耗时操作
@@ -43,18 +119,69 @@ abstract class ViewFinder<T : ViewFinder<T>>(
         interval: Long = FinderConfig.FINDER_WAIT_INTERVAL,
     ): ViewNode? {
         val wt = min(30000, max(0, waitTime))
-        val beginTime = System.currentTimeMillis()
-        val endTime = beginTime + wt
-        do {
-            val node = findFirst()
-            if (node != null) return node
+        return waitUntil(wt, interval, onMiss = {
             if (FinderConfig.ENABLE_FIND_FAILED_STRATEGY) {
                 FinderConfig.onFindFailed?.invoke(this)
             }
-            if (interval > 0) delay(interval)
-            else ensureActive()
-        } while (System.currentTimeMillis() < endTime)
-        return null
+        }) { searchFirst() }
+    }
+
+    /**
+     * 循环执行 [run] 直到返回非空或超时
+     *
+     * 轮询模式：每次间隔 [interval]
+     * 事件模式：等待视图内容事件后再执行，无事件时按
+     * [FinderConfig.FINDER_WAIT_FALLBACK_INTERVAL] 兜底
+     */
+    private suspend fun <R : Any> waitUntil(
+        waitMillis: Long,
+        interval: Long,
+        onMiss: () -> Unit = {},
+        run: suspend () -> R?
+    ): R? {
+        val byEvent = waitByEvent
+        val begin = SystemClock.elapsedRealtime()
+        val end = begin + waitMillis
+        var evaluations = 0
+        var eventWakeups = 0
+        var pollWakeups = 0
+        var searchMillis = 0L
+        var result: R?
+        while (true) {
+            // 先记录版本再搜索，搜索期间的事件不会遗漏
+            val version = AccessibilityEvents.contentVersion.value
+            // run 可能挂起并切换线程，只统计墙钟时间
+            val t0 = SystemClock.elapsedRealtime()
+            result = run()
+            searchMillis += SystemClock.elapsedRealtime() - t0
+            evaluations++
+            if (result != null) break
+            onMiss()
+            val remain = end - SystemClock.elapsedRealtime()
+            if (remain <= 0) break
+            if (byEvent) {
+                val woke = withTimeoutOrNull(
+                    min(remain, FinderConfig.FINDER_WAIT_FALLBACK_INTERVAL)
+                ) {
+                    AccessibilityEvents.contentVersion.first { it != version }
+                }
+                if (woke != null) eventWakeups++ else pollWakeups++
+            } else {
+                if (interval > 0) delay(interval)
+                else ensureActive()
+                pollWakeups++
+            }
+        }
+        val stats = WaitStats(
+            byEvent, result != null, evaluations, eventWakeups, pollWakeups,
+            searchMillis, SystemClock.elapsedRealtime() - begin
+        )
+        lastWaitStats = stats
+        if (DEBUG) {
+            Timber.d("${finderInfo()} $stats")
+        }
+        FinderConfig.onWaitStats?.invoke(this, stats)
+        return result
     }
 
     @Throws(ViewNodeNotFoundException::class)
@@ -69,27 +196,32 @@ abstract class ViewFinder<T : ViewFinder<T>>(
      * 查找第一个
      * @return ViewNode?
      */
-    suspend fun findFirst(): ViewNode? =
-        traverseAllNode(startNode, includeInvisible = includeInvisible).let {
-            if (it == null && rootCompat) {
+    suspend fun findFirst(): ViewNode? = cached(KIND_FIRST) { searchFirst() }
+
+    // 不经过结果缓存，waitFor / waitHide 每次都重新搜索
+    private suspend fun searchFirst(): ViewNode? {
+        onTraverseStart()
+        val budget = newBudget()
+        return traverseStart(null, budget).let {
+            if (it == null && rootCompat && !budget.exhausted) {
                 Timber.d("findFirst with rootCompat")
-                traverseAllNode(ViewNode.activeWinNode(), includeInvisible = includeInvisible)
+                traverse(ViewNode.activeWinNode(), null, budget)
             } else it
-        }
+        }.also { endTraverse(budget) }
+    }
 
     @Throws(CancellationException::class)
-    fun findFirstBlocking(): ViewNode? {
-        return traverseAllNodeBlocking(startNode, includeInvisible = includeInvisible).let {
-            if (it == null && rootCompat) {
+    fun findFirstBlocking(): ViewNode? = cached(KIND_FIRST) {
+        onTraverseStart()
+        val budget = newBudget()
+        traverseBlocking(startNode, null, budget).let {
+            if (it == null && rootCompat && !budget.exhausted) {
                 if (DEBUG) {
                     Timber.d("findFirst with rootCompat")
                 }
-                traverseAllNodeBlocking(
-                    ViewNode.activeWinNode(),
-                    includeInvisible = includeInvisible
-                )
+                traverseBlocking(ViewNode.activeWinNode(), null, budget)
             } else it
-        }
+        }.also { endTraverse(budget) }
     }
 
     // [findAll]
@@ -118,125 +250,627 @@ abstract class ViewFinder<T : ViewFinder<T>>(
         return this as T
     }
 
+    /**
+     * waitFor / waitHide 使用事件驱动等待
+     * 收到视图内容事件时才重新搜索，减少无效搜索
+     */
+    fun waitByEvent(b: Boolean = true): T {
+        waitByEvent = b
+        @Suppress("UNCHECKED_CAST")
+        return this as T
+    }
+
+    /**
+     * 从根节点搜索时，按窗口信息过滤窗口
+     * 被排除的窗口不会获取任何节点
+     */
+    fun windowFilter(filter: WindowFilter?): T {
+        windowFilter = filter
+        @Suppress("UNCHECKED_CAST")
+        return this as T
+    }
+
+    fun windowFilter(block: WindowFilter.() -> Unit): T = windowFilter(WindowFilter().apply(block))
+
+    // 显式过滤与条件推导出的过滤合并
+    private fun effectiveWindowFilter(): WindowFilter? {
+        val derived = if (FinderConfig.FINDER_DERIVE_WINDOW_FILTER) derivedWindowFilter() else null
+        return windowFilter?.and(derived) ?: derived
+    }
+
+    /**
+     * 从根节点搜索时，各窗口并行搜索
+     * 结果按窗口优先级合并，findFirst 在高优先级窗口命中后取消其余窗口的搜索
+     * 仅用于非快照模式的 suspend 方法，findCondition 需线程安全
+     */
+    fun parallelWindows(b: Boolean = true): T {
+        parallelWindows = b
+        @Suppress("UNCHECKED_CAST")
+        return this as T
+    }
+
+    /**
+     * 使用快照模式搜索
+     * 捕获一次视图树后在内存中匹配，适合节点较多的页面
+     * id / text / desc / type / packageName 条件由 [SnapshotIndex] 直接给出候选节点
+     */
+    fun useSnapshot(b: Boolean = true): T {
+        useSnapshot = b
+        @Suppress("UNCHECKED_CAST")
+        return this as T
+    }
+
+    /**
+     * 遍历策略，默认 [FinderConfig.FINDER_TRAVERSE_STRATEGY]
+     * @see TraverseStrategy
+     */
+    fun strategy(s: TraverseStrategy): T {
+        strategy = s
+        @Suppress("UNCHECKED_CAST")
+        return this as T
+    }
+
+    /**
+     * 最大搜索深度，起始节点的子节点深度为 1
+     * 超过深度的节点不会获取
+     */
+    fun maxDepth(depth: Int): T {
+        maxDepth = depth
+        @Suppress("UNCHECKED_CAST")
+        return this as T
+    }
+
+    /**
+     * 单次搜索最多匹配的节点数，用于限制大页面上的最坏耗时
+     * 超出后停止搜索，结果见 [lastTraverseStats]
+     */
+    fun maxNodes(n: Int): T {
+        maxNodes = n
+        @Suppress("UNCHECKED_CAST")
+        return this as T
+    }
+
+    /**
+     * 缓存搜索结果，视图未变化时重复搜索直接返回
+     * 仅对从根节点、未指定 windowFilter 的 findFirst / findAll 生效；waitFor / waitHide 不使用缓存
+     * 服务未订阅内容事件时（[AccessibilityEvents.tracksContentChanges]）无效，
+     * 单独开启时需在服务连接前设置 [FinderConfig.FINDER_RESULT_CACHE] 或订阅内容事件
+     * @see ResultCache
+     */
+    fun cacheResult(b: Boolean = true): T {
+        cacheResult = b
+        @Suppress("UNCHECKED_CAST")
+        return this as T
+    }
+
+    // 影响结果的参数，不可缓存时为 null
+    private fun cacheKey(kind: Char): String? {
+        if (!cacheResult || node != null || windowFilter != null) return null
+        if (!AccessibilityEvents.tracksContentChanges) return null
+        return "$kind|$includeInvisible|$rootCompat|$strategy|$maxDepth|$maxNodes|${finderInfo()}"
+    }
+
+    private inline fun <R> cached(kind: Char, find: () -> R): R {
+        val key = cacheKey(kind) ?: return find()
+        val generation = ResultCache.generation
+        val hit = ResultCache.get(key, generation)
+        @Suppress("UNCHECKED_CAST")
+        if (hit !== ResultCache.MISS) return hit as R
+        return find().also { ResultCache.put(key, generation, it) }
+    }
+
+    /**
+     * 绑定模式：作为 [FinderBuilderWithOperation] 读取属性、执行操作时只搜索一次，
+     * 视图版本未变时复用该节点；版本改变、修改了搜索参数或未订阅内容事件时重新搜索
+     * 默认 [FinderConfig.FINDER_BIND_NODE]
+     */
+    fun bind(b: Boolean = true): T {
+        bindMode = b
+        if (!b) boundNode = null
+        @Suppress("UNCHECKED_CAST")
+        return this as T
+    }
+
+    /**
+     * 绑定的节点，未绑定或已失效时等待搜索（[require]）
+     * 非绑定模式下每次调用都重新搜索
+     */
+    @Throws(ViewNodeNotFoundException::class)
+    suspend fun bound(): ViewNode {
+        validBoundNode()?.let { return it }
+        val generation = ResultCache.generation
+        return require().also { bindNode(it, generation) }
+    }
+
+    @Throws(ViewNodeNotFoundException::class)
+    fun boundBlocking(): ViewNode {
+        validBoundNode()?.let { return it }
+        val generation = ResultCache.generation
+        return runBlocking { require() }.also { bindNode(it, generation) }
+    }
+
+    /**
+     * 使用绑定的节点执行 [block]，不阻塞线程
+     */
+    @Throws(ViewNodeNotFoundException::class)
+    suspend inline fun <R> withNode(block: (ViewNode) -> R): R = block(bound())
+
+    private fun bindNode(n: ViewNode, generation: Long) {
+        if (!bindMode) return
+        boundGeneration = generation
+        boundScope = bindScope()
+        boundNode = n
+    }
+
+    // 影响搜索结果的范围及参数
+    private fun bindScope(): List<Any?> = listOf(
+        node, windowFilter, includeInvisible, useSnapshot, rootCompat,
+        strategy, maxDepth, maxNodes, finderInfo()
+    )
+
+    // 只有视图版本可信且未变、搜索参数未变时，才能确定节点仍在范围内且为第一个匹配；
+    // 单独 refresh 检查条件无法确认可见性、范围及顺序，其余情况重新搜索
+    private fun validBoundNode(): ViewNode? {
+        val n = boundNode ?: return null
+        if (AccessibilityEvents.tracksContentChanges &&
+            ResultCache.generation == boundGeneration && boundScope == bindScope()
+        ) return n
+        boundNode = null
+        return null
+    }
+
+    private fun newBudget() = TraverseBudget(maxDepth, maxNodes)
+
+    private fun endTraverse(budget: TraverseBudget) {
+        val stats = TraverseStats(
+            strategy, budget.visited, budget.exhausted,
+            SystemClock.elapsedRealtime() - budget.beginTime
+        )
+        lastTraverseStats = stats
+        if (DEBUG && budget.exhausted) {
+            Timber.d("${finderInfo()} $stats")
+        }
+    }
+
     /**
      * 查找全部符合条件的 Node
      * @return List<ViewNode> 无结果则返回空
      */
-    suspend fun findAll(): List<ViewNode> {
+    suspend fun findAll(): List<ViewNode> = cached(KIND_ALL) {
+        onTraverseStart()
+        val budget = newBudget()
         val l = mutableListOf<ViewNode>()
-        traverseAllNode(startNode, includeInvisible, l)
-        if (l.isEmpty() && rootCompat) {
+        traverseStart(l, budget)
+        if (l.isEmpty() && rootCompat && !budget.exhausted) {
             if (DEBUG) {
                 Timber.d("findAll with rootCompat")
             }
-            traverseAllNode(ViewNode.activeWinNode(), includeInvisible, l)
+            traverse(ViewNode.activeWinNode(), l, budget)
         }
-        return l
+        endTraverse(budget)
+        l
     }
 
-    fun findAllBlocking(): List<ViewNode> {
+    fun findAllBlocking(): List<ViewNode> = cached(KIND_ALL) {
+        onTraverseStart()
+        val budget = newBudget()
         val l = mutableListOf<ViewNode>()
-        traverseAllNodeBlocking(startNode, l, includeInvisible)
-        if (l.isEmpty() && rootCompat) {
+        traverseBlocking(startNode, l, budget)
+        if (l.isEmpty() && rootCompat && !budget.exhausted) {
             if (DEBUG) {
                 Timber.d("findAll with rootCompat")
             }
-            traverseAllNodeBlocking(ViewNode.activeWinNode(), l, includeInvisible)
+            traverseBlocking(ViewNode.activeWinNode(), l, budget)
         }
-        return l
+        endTraverse(budget)
+        l
     }
 
     /**
-     * 深搜遍历
-     *
-     * @param node AccessibilityNodeInfo?
-     * @param all Boolean true 搜索全部返回list else return first
-     * @param includeInvisible Boolean 是否包含不可见元素
-     * @return ViewNode?
+     * 以 Flow 逐个发送匹配节点，收集时才开始搜索（冷流）
+     * 下游处理完一个节点后才继续遍历；take(n) 或取消收集时立即停止遍历
+     * 遍历在收集者的线程执行，可配合 flowOn 切换
+     */
+    fun asFlow(): Flow<ViewNode> = flow {
+        val ctx = currentCoroutineContext()
+        for (vn in matchSequence { ctx.ensureActive() }) {
+            emit(vn)
+        }
+    }
+
+    /**
+     * 惰性匹配序列，取下一个时才继续遍历，线程中断时抛出 CancellationException
+     * 多窗口并行搜索不适用于序列，按窗口顺序遍历
+     */
+    fun findSequence(): Sequence<ViewNode> = matchSequence(::ensureNotInterrupt)
+
+    /**
+     * 匹配节点中 text / desc 与 [text] 最相似的 [k] 个，按相似度降序
+     * 有界堆只保留前 k 个，无法超过第 k 名的节点尽早跳过 @see SimilarityRanker
+     * @param minScore 最低相似度
+     */
+    suspend fun findSimilar(text: String, k: Int = 1, minScore: Float = 0f): List<ScoredNode> {
+        val ctx = currentCoroutineContext()
+        return SimilarityRanker(text, k, minScore)
+            .offerAll(matchSequence { ctx.ensureActive() })
+            .result()
+    }
+
+    fun findSimilarBlocking(text: String, k: Int = 1, minScore: Float = 0f): List<ScoredNode> =
+        SimilarityRanker(text, k, minScore)
+            .offerAll(matchSequence(::ensureNotInterrupt))
+            .result()
+
+    /**
+     * 距屏幕坐标 (x, y) 最近的 [k] 个匹配节点，按距离升序，点在节点内时距离为 0
+     * 基于快照的 [SpatialIndex]，由近到远只匹配所需的节点，不受 useSnapshot 影响
+     */
+    suspend fun findNearest(x: Int, y: Int, k: Int = 1): List<ViewNode> {
+        val ctx = currentCoroutineContext()
+        return nearest(x, y, k) { ctx.ensureActive() }
+    }
+
+    fun findNearestBlocking(x: Int, y: Int, k: Int = 1): List<ViewNode> =
+        nearest(x, y, k, ::ensureNotInterrupt)
+
+    /**
+     * 包含屏幕坐标 (x, y) 的最深层匹配节点，如 `SF.clickable().findAt(x, y)`
+     * 基于快照的 [SpatialIndex]，不受 useSnapshot 影响
      */
-    private suspend fun traverseAllNode(
+    suspend fun findAt(x: Int, y: Int): ViewNode? {
+        val ctx = currentCoroutineContext()
+        return deepestAt(x, y) { ctx.ensureActive() }
+    }
+
+    fun findAtBlocking(x: Int, y: Int): ViewNode? = deepestAt(x, y, ::ensureNotInterrupt)
+
+    private fun nearest(x: Int, y: Int, k: Int, check: () -> Unit): List<ViewNode> {
+        onTraverseStart()
+        val snapshot = snapshotOf(startNode, check)
+        val matcher = snapshotMatcher(snapshot)
+        return snapshot.spatial.nearest(x, y, k) {
+            check()
+            matcher(it)
+        }.map(snapshot::viewNodeAt)
+    }
+
+    private fun deepestAt(x: Int, y: Int, check: () -> Unit): ViewNode? {
+        onTraverseStart()
+        val snapshot = snapshotOf(startNode, check)
+        val matcher = snapshotMatcher(snapshot)
+        val hits = snapshot.spatial.at(x, y)
+        for (j in hits.indices.reversed()) {
+            check()
+            if (matcher(hits[j])) return snapshot.viewNodeAt(hits[j])
+        }
+        return null
+    }
+
+    // 单个快照节点是否匹配，条件可剪枝时检查祖先，结果与遍历一致
+    private fun snapshotMatcher(snapshot: TreeSnapshot): (Int) -> Boolean {
+        val cursor = snapshot.cursor()
+        val interrupt = AtomicBoolean(false)
+        val states = if (canPrune) ByteArray(snapshot.size) else null
+        return { i ->
+            snapshot.depth(i) <= maxDepth &&
+                    (states == null || !isPruned(snapshot, snapshot.parent(i), states, cursor, interrupt)) &&
+                    run {
+                        cursor.index = i
+                        interrupt.set(false)
+                        findCondition(cursor, interrupt)
+                    }
+        }
+    }
+
+    // 遍历完成时记录 lastTraverseStats，提前结束时不记录
+    private fun matchSequence(check: () -> Unit): Sequence<ViewNode> = sequence {
+        onTraverseStart()
+        val budget = newBudget()
+        val n = yieldMatches(startNode, budget, check)
+        if (n == 0 && rootCompat && !budget.exhausted) {
+            if (DEBUG) {
+                Timber.d("findSequence with rootCompat")
+            }
+            yieldMatches(ViewNode.activeWinNode(), budget, check)
+        }
+        endTraverse(budget)
+    }
+
+    // @return 匹配数
+    private suspend fun SequenceScope<ViewNode>.yieldMatches(
         node: ViewNode?,
-        includeInvisible: Boolean = false,
-        list: MutableList<ViewNode>? = null,
-        depth: Int = 0,
-        nodeSet: MutableSet<AcsNode> = mutableSetOf()
+        budget: TraverseBudget,
+        check: () -> Unit
+    ): Int {
+        node ?: return 0
+        var n = 0
+        if (!useSnapshot) {
+            val walker = NodeWalker(this@ViewFinder, strategy, includeInvisible, budget, check)
+                .start(node, 0)
+            while (true) {
+                yield(walker.nextMatch() ?: break)
+                n++
+            }
+            return n
+        }
+        val snapshot = snapshotOf(node, check)
+        for (vn in snapshotMatches(snapshot, budget, check)) {
+            yield(vn)
+            n++
+        }
+        return n
+    }
+
+    // 快照模式下，从根节点搜索时使用 HierarchyCache
+    private suspend fun traverseStart(
+        list: MutableList<ViewNode>?,
+        budget: TraverseBudget
+    ): ViewNode? {
+        // 缓存包含全部窗口，显式过滤窗口时不使用
+        if (useSnapshot && node == null && HierarchyCache.enabled && windowFilter == null) {
+            val ctx = currentCoroutineContext()
+            val snapshot = HierarchyCache.obtain(includeInvisible) { ctx.ensureActive() }
+            return traverseSnapshot(snapshot, list, budget) { ctx.ensureActive() }
+        }
+        return traverse(startNode, list, budget)
+    }
+
+    private suspend fun traverse(
+        node: ViewNode?,
+        list: MutableList<ViewNode>?,
+        budget: TraverseBudget
     ): ViewNode? {
-        ensureActive()
+        if (!useSnapshot) {
+            if (parallelWindows && node != null && node.isWindowsRoot) {
+                return traverseWindows(node, list, budget)
+            }
+            return traverseLive(node, 0, list, budget)
+        }
         node ?: return null
-        if (node.node in nodeSet) return null
-        nodeSet.add(node.node)
-        val interrupt = AtomicBoolean(false)
-        node.children.forEach { childNode ->
-            ensureActive()
-            if (childNode == null) {
-                return@forEach
+        val ctx = currentCoroutineContext()
+        val snapshot = TreeSnapshot.capture(node, includeInvisible) { ctx.ensureActive() }
+        return traverseSnapshot(snapshot, list, budget) { ctx.ensureActive() }
+    }
+
+    private fun traverseBlocking(
+        node: ViewNode?,
+        list: MutableList<ViewNode>?,
+        budget: TraverseBudget
+    ): ViewNode? {
+        node ?: return null
+        if (!useSnapshot) {
+            return walk(node, 0, list, budget, ::ensureNotInterrupt)
+        }
+        val snapshot = snapshotOf(node, ::ensureNotInterrupt)
+        return traverseSnapshot(snapshot, list, budget, ::ensureNotInterrupt)
+    }
+
+    // 从根节点捕获时使用 HierarchyCache，缓存包含全部窗口，显式过滤窗口时不使用
+    private fun snapshotOf(node: ViewNode, check: () -> Unit): TreeSnapshot =
+        if (node.isWindowsRoot && HierarchyCache.enabled && windowFilter == null) {
+            HierarchyCache.obtain(includeInvisible, check)
+        } else TreeSnapshot.capture(node, includeInvisible, check)
+
+    // 按策略搜索 node 的子孙节点，node 深度为 depth
+    private suspend fun traverseLive(
+        node: ViewNode?, depth: Int,
+        list: MutableList<ViewNode>?,
+        budget: TraverseBudget
+    ): ViewNode? {
+        node ?: return null
+        val ctx = currentCoroutineContext()
+        return walk(node, depth, list, budget) { ctx.ensureActive() }
+    }
+
+    /**
+     * 实时节点遍历 @see NodeWalker
+     * @return list 为 null 时返回第一个匹配
+     */
+    private fun walk(
+        node: ViewNode, depth: Int,
+        list: MutableList<ViewNode>?,
+        budget: TraverseBudget,
+        check: () -> Unit
+    ): ViewNode? {
+        val walker = NodeWalker(this, strategy, includeInvisible, budget, check)
+            .start(node, depth)
+        if (list == null) return walker.nextMatch()
+        walker.collect(list)
+        return null
+    }
+
+    /**
+     * 在快照上匹配
+     * @return list 为 null 时返回第一个匹配
+     */
+    private fun traverseSnapshot(
+        snapshot: TreeSnapshot,
+        list: MutableList<ViewNode>?,
+        budget: TraverseBudget,
+        check: () -> Unit
+    ): ViewNode? {
+        val matches = snapshotMatches(snapshot, budget, check)
+        if (list == null) return matches.firstOrNull()
+        list.addAll(matches)
+        return null
+    }
+
+    /**
+     * 快照上的匹配序列，取下一个时才继续匹配
+     * DFS 按先序，interrupt 时直接跳过整棵子树；其他策略按层匹配
+     */
+    private fun snapshotMatches(
+        snapshot: TreeSnapshot,
+        budget: TraverseBudget,
+        check: () -> Unit
+    ): Sequence<ViewNode> = sequence {
+        if (FinderConfig.FINDER_SNAPSHOT_INDEX) {
+            val candidates = snapshotCandidates(snapshot)
+            if (candidates != null) {
+                yieldCandidates(snapshot, candidates, budget, check)
+                return@sequence
             }
-            if (!includeInvisible && !childNode.isVisibleToUser) {
-                return@forEach
+        }
+        if (strategy != TraverseStrategy.DFS) {
+            yieldSnapshotLevels(snapshot, budget, check)
+            return@sequence
+        }
+        val cursor = snapshot.cursor()
+        val interrupt = AtomicBoolean(false)
+        var i = 1
+        while (i < snapshot.size) {
+            check()
+            if (snapshot.depth(i) > budget.maxDepth) {
+                i = snapshot.subtreeEnd(i)
+                continue
             }
+            if (!budget.visit()) return@sequence
+            cursor.index = i
             interrupt.set(false)
-            val matched = findCondition(childNode.node, interrupt)
-            if (matched) {
-                if (list != null) {
-                    list.add(childNode)
-                } else return childNode
-            }
+            val matched = findCondition(cursor, interrupt)
+            if (matched) yield(snapshot.viewNodeAt(i))
             if (!matched && interrupt.get()) {
                 // skip children search
-                if (DEBUG) {
-                    Timber.d("skip children search $childNode")
-                }
-            } else {
-                val r = traverseAllNode(childNode, includeInvisible, list, depth + 1)
-                if (list == null && r != null) {
-                    return r
+                i = snapshot.subtreeEnd(i)
+            } else i++
+        }
+    }
+
+    // 快照按层匹配，快照无 IPC，迭代加深与 BFS 结果相同
+    private suspend fun SequenceScope<ViewNode>.yieldSnapshotLevels(
+        snapshot: TreeSnapshot,
+        budget: TraverseBudget,
+        check: () -> Unit
+    ) {
+        val cursor = snapshot.cursor()
+        val interrupt = AtomicBoolean(false)
+        var queue = IntArray(16)
+        var head = 0
+        var tail = 0
+        queue[tail++] = 0
+        while (head < tail) {
+            val p = queue[head++]
+            if (!budget.canDescend(snapshot.depth(p))) continue
+            val end = snapshot.subtreeEnd(p)
+            var i = p + 1
+            while (i < end) {
+                check()
+                if (!budget.visit()) return
+                cursor.index = i
+                interrupt.set(false)
+                val matched = findCondition(cursor, interrupt)
+                if (matched) yield(snapshot.viewNodeAt(i))
+                if (matched || !interrupt.get()) {
+                    if (tail == queue.size) queue = queue.copyOf(tail * 2)
+                    queue[tail++] = i
                 }
+                i = snapshot.subtreeEnd(i)
             }
         }
-        return null
     }
 
-    private fun traverseAllNodeBlocking(
-        node: ViewNode?, list: MutableList<ViewNode>? = null,
-        includeInvisible: Boolean = false, depth: Int = 0,
-        nodeSet: MutableSet<Int> = mutableSetOf()
+    /**
+     * 每个窗口一个子任务，运行在 [windowDispatcher]
+     * 按窗口优先级（[ViewNode.rootNodes] 顺序）依次等待结果：
+     * - findFirst：第一个非空结果即为最高优先级的匹配，取消其余任务
+     * - findAll：按窗口顺序合并，与顺序遍历结果一致
+     */
+    private suspend fun traverseWindows(
+        root: ViewNode,
+        list: MutableList<ViewNode>?,
+        budget: TraverseBudget
+    ): ViewNode? = coroutineScope {
+        val tasks = root.children.filterNotNull().map { win ->
+            async(windowDispatcher) {
+                val l = if (list != null) mutableListOf<ViewNode>() else null
+                traverseWindow(win, l, budget) to l
+            }
+        }
+        tasks.forEachIndexed { i, task ->
+            val (r, l) = task.await()
+            if (list != null) {
+                list.addAll(l!!)
+            } else if (r != null) {
+                for (j in i + 1 until tasks.size) tasks[j].cancel()
+                return@coroutineScope r
+            }
+        }
+        null
+    }
+
+    // 匹配窗口根节点（深度 1）后搜索其子树
+    private suspend fun traverseWindow(
+        win: ViewNode,
+        list: MutableList<ViewNode>?,
+        budget: TraverseBudget
     ): ViewNode? {
-        ensureNotInterrupt()
-        node ?: return null
-        if (node.hashCode() in nodeSet) return null
-        nodeSet.add(node.hashCode())
+        if (!budget.canDescend(0)) return null
+        if (!includeInvisible && !win.isVisibleToUser) return null
+        if (!budget.visit()) return null
         val interrupt = AtomicBoolean(false)
-        node.children.forEach { childNode ->
-            ensureNotInterrupt()
-            if (childNode == null) {
-                return@forEach
-            }
-            if (!includeInvisible && !childNode.isVisibleToUser) {
-                return@forEach
+        val matched = findCondition(LiveNodeProps(win.node), interrupt)
+        if (matched) {
+            if (list != null) {
+                list.add(win)
+            } else return win
+        }
+        if (!matched && interrupt.get()) return null
+        return traverseLive(win, 1, list, budget)
+    }
+
+    /**
+     * 只匹配索引给出的候选节点
+     * 条件可剪枝时，检查祖先节点，结果与完整遍历一致
+     * 非 DFS 策略时按深度排序
+     */
+    private suspend fun SequenceScope<ViewNode>.yieldCandidates(
+        snapshot: TreeSnapshot,
+        candidates: IntArray,
+        budget: TraverseBudget,
+        check: () -> Unit
+    ) {
+        val cursor = snapshot.cursor()
+        val interrupt = AtomicBoolean(false)
+        val states = if (canPrune) ByteArray(snapshot.size) else null
+        val ordered = if (strategy == TraverseStrategy.DFS) candidates
+        else candidates.sortedBy { snapshot.depth(it) }.toIntArray()
+        for (i in ordered) {
+            if (i <= 0) continue
+            check()
+            if (snapshot.depth(i) > budget.maxDepth) continue
+            if (states != null && isPruned(snapshot, snapshot.parent(i), states, cursor, interrupt)) {
+                continue
             }
+            if (!budget.visit()) return
+            cursor.index = i
             interrupt.set(false)
-            val matched = findCondition(childNode.node, interrupt)
-            if (matched) {
-                if (list != null) {
-                    list.add(childNode)
-                } else return childNode
-            }
-            if (!matched && interrupt.get()) {
-                // skip children search
-                if (DEBUG) {
-                    Timber.d("skip children search $childNode")
-                }
-            } else {
-                val r = traverseAllNodeBlocking(
-                    childNode,
-                    list, includeInvisible, depth + 1, nodeSet
-                )
-                if (list == null && r != null) {
-                    return r
-                }
+            if (findCondition(cursor, interrupt)) yield(snapshot.viewNodeAt(i))
+        }
+    }
+
+    // 节点 p 的子树是否被自身或祖先剪枝
+    private fun isPruned(
+        snapshot: TreeSnapshot, p: Int, states: ByteArray,
+        cursor: TreeSnapshot.Cursor, interrupt: AtomicBoolean
+    ): Boolean {
+        // 向上收集未计算的祖先，index 0 不参与匹配
+        val path = ArrayList<Int>()
+        var j = p
+        while (j > 0 && states[j] == STATE_UNKNOWN) {
+            path.add(j)
+            j = snapshot.parent(j)
+        }
+        var pruned = j > 0 && states[j] == STATE_PRUNED
+        for (k in path.indices.reversed()) {
+            val n = path[k]
+            if (!pruned) {
+                cursor.index = n
+                interrupt.set(false)
+                pruned = !findCondition(cursor, interrupt) && interrupt.get()
             }
+            states[n] = if (pruned) STATE_PRUNED else STATE_OPEN
         }
-        return null
+        return pruned
     }
 
     /**
@@ -244,8 +878,8 @@ abstract class ViewFinder<T : ViewFinder<T>>(
      * @return Boolean false 超时 true 消失
      */
     suspend fun waitHide(waitMs: Int, interval: Long = 50L): Boolean {
-        return whileWaitTime(waitMs.toLong(), interval) {
-            if (findFirst() != null) {
+        return waitUntil(waitMs.toLong(), interval) {
+            if (searchFirst() != null) {
                 null
             }// 显示，继续等待
             else {
@@ -260,10 +894,52 @@ abstract class ViewFinder<T : ViewFinder<T>>(
         interval: Long = FinderConfig.FINDER_WAIT_INTERVAL,
     ): ViewNode? = waitFor(waitTime, interval)
 
+    /**
+     * 每次搜索开始前调用，可在此准备匹配所需数据
+     */
+    protected open fun onTraverseStart() {}
+
+    // FinderBatch 批量搜索前调用
+    internal fun prepareTraverse() = onTraverseStart()
+
+    // FinderBatch 无法保持一致的设置，无则为 null
+    internal fun batchUnsupported(includeInvisible: Boolean, useSnapshot: Boolean): String? = when {
+        node != null -> "start node"
+        rootCompat -> "rootCompat"
+        this.includeInvisible != includeInvisible -> "includeInvisible ${this.includeInvisible}"
+        this.useSnapshot != useSnapshot -> "useSnapshot ${this.useSnapshot}"
+        windowFilter != null -> "windowFilter"
+        strategy != TraverseStrategy.DFS -> "strategy $strategy"
+        maxDepth != Int.MAX_VALUE -> "maxDepth $maxDepth"
+        maxNodes != Int.MAX_VALUE -> "maxNodes $maxNodes"
+        else -> null
+    }
+
+    /**
+     * 快照模式下由 [TreeSnapshot.index] 得到的候选节点（升序）
+     * 返回 null 时完整遍历快照
+     */
+    internal open fun snapshotCandidates(snapshot: TreeSnapshot): IntArray? = null
+
+    /**
+     * 由条件推导出的窗口过滤，须与逐节点匹配结果一致
+     */
+    internal open fun derivedWindowFilter(): WindowFilter? = null
+
+    // findCondition 是否可能要求跳过子树
+    internal open val canPrune: Boolean get() = true
+
     /**
      * 查找条件
      */
     abstract fun findCondition(node: AcsNode, interrupt: AtomicBoolean): Boolean
 
+    /**
+     * 查找条件，遍历及快照模式均使用此方法
+     * 默认转为 [AcsNode] 调用
+     */
+    open fun findCondition(node: NodeProps, interrupt: AtomicBoolean): Boolean =
+        findCondition(node.acsNode, interrupt)
+
     abstract fun finderInfo(): String
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package cn.vove7.auto.core.viewfinder
+
+/**
+ * # WaitStats
+ * 一次等待（waitFor / waitHide）的统计
+ *
+ * @property byEvent 是否为事件驱动等待
+ * @property success 是否等到结果
+ * @property evaluations 搜索次数
+ * @property eventWakeups 由事件唤醒次数
+ * @property pollWakeups 由轮询超时唤醒次数
+ * @property searchMillis 搜索耗时（墙钟时间，不含等待间隔）
+ * @property elapsedMillis 总耗时，成功时即为检测耗时
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+class WaitStats(
+    val byEvent: Boolean,
+    val success: Boolean,
+    val evaluations: Int,
+    val eventWakeups: Int,
+    val pollWakeups: Int,
+    val searchMillis: Long,
+    val elapsedMillis: Long,
+) {
+    // 检测耗时，未成功为 -1
+    val timeToDetectMillis: Long get() = if (success) elapsedMillis else -1
+
+    override fun toString(): String {
+        return "WaitStats(byEvent=$byEvent, success=$success, evaluations=$evaluations, " +
+                "eventWakeups=$eventWakeups, pollWakeups=$pollWakeups, " +
+                "search=${searchMillis}ms, elapsed=${elapsedMillis}ms)"
+    }
+}
@@ -0,0 +1,154 @@
+package cn.vove7.auto.core.viewfinder
+
+import android.view.accessibility.AccessibilityNodeInfo
+import android.view.accessibility.AccessibilityWindowInfo
+
+/**
+ * # WindowFilter
+ * 窗口过滤，在获取窗口节点前按窗口信息排除，不符合的窗口不产生任何节点 IPC
+ *
+ * 用法：
+ * ```kotlin
+ * SF.text("OK").windowFilter {
+ *     types(AccessibilityWindowInfo.TYPE_APPLICATION)
+ *     packages("com.android.chrome")
+ * }.findFirst()
+ * ```
+ * 未设置的项不过滤，多项同时设置时需全部满足。
+ *
+ * 开启 [FinderConfig.FINDER_DERIVE_WINDOW_FILTER] 后，ConditionGroup 顶层 AND 中的
+ * [PackageCondition] / [DisplayIdCondition] 会自动转为窗口过滤；
+ * 按根节点包名跳过整个窗口，窗口内节点包名与根节点不同（如嵌入内容、WebView）时会找不到
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+class WindowFilter {
+
+    // AccessibilityWindowInfo.TYPE_*
+    var types: IntArray? = null
+    var excludeTypes: IntArray? = null
+
+    // 窗口根节点包名，需获取根节点
+    var packages: Array<out CharSequence>? = null
+
+    var displayIds: IntArray? = null
+
+    var minLayer = Int.MIN_VALUE
+    var maxLayer = Int.MAX_VALUE
+
+    var activeOnly = false
+    var focusedOnly = false
+
+    fun types(vararg types: Int) = apply { this.types = types }
+
+    fun excludeTypes(vararg types: Int) = apply { excludeTypes = types }
+
+    fun packages(vararg packages: CharSequence) = apply { this.packages = packages }
+
+    fun displayIds(vararg ids: Int) = apply { displayIds = ids }
+
+    fun layer(min: Int = Int.MIN_VALUE, max: Int = Int.MAX_VALUE) = apply {
+        minLayer = min
+        maxLayer = max
+    }
+
+    fun active(b: Boolean = true) = apply { activeOnly = b }
+
+    fun focused(b: Boolean = true) = apply { focusedOnly = b }
+
+    /**
+     * 只检查窗口信息，不产生节点 IPC
+     * @param displayId 窗口所在 display
+     */
+    fun acceptWindow(win: AccessibilityWindowInfo, displayId: Int): Boolean {
+        val type = win.type
+        if (types?.contains(type) == false) return false
+        if (excludeTypes?.contains(type) == true) return false
+        if (displayIds?.contains(displayId) == false) return false
+        val layer = win.layer
+        if (layer < minLayer || layer > maxLayer) return false
+        if (activeOnly && !win.isActive) return false
+        if (focusedOnly && !win.isFocused) return false
+        return true
+    }
+
+    /**
+     * 检查窗口根节点
+     */
+    fun acceptRoot(root: AccessibilityNodeInfo): Boolean {
+        val pkgs = packages ?: return true
+        val pkg = root.packageName?.toString() ?: return false
+        return pkgs.any { it.toString() == pkg }
+    }
+
+    /**
+     * 合并两个过滤，需同时满足
+     */
+    infix fun and(other: WindowFilter?): WindowFilter {
+        other ?: return this
+        return WindowFilter().also {
+            it.types = intersect(types, other.types)
+            it.excludeTypes = union(excludeTypes, other.excludeTypes)
+            it.packages = intersect(packages, other.packages)
+            it.displayIds = intersect(displayIds, other.displayIds)
+            it.minLayer = maxOf(minLayer, other.minLayer)
+            it.maxLayer = minOf(maxLayer, other.maxLayer)
+            it.activeOnly = activeOnly || other.activeOnly
+            it.focusedOnly = focusedOnly || other.focusedOnly
+        }
+    }
+
+    override fun toString() = listOfNotNull(
+        types?.let { "types=${it.contentToString()}" },
+        excludeTypes?.let { "excludeTypes=${it.contentToString()}" },
+        packages?.let { "packages=${it.contentToString()}" },
+        displayIds?.let { "displayIds=${it.contentToString()}" },
+        if (minLayer != Int.MIN_VALUE || maxLayer != Int.MAX_VALUE) {
+            "layer=[$minLayer, $maxLayer]"
+        } else null,
+        if (activeOnly) "active" else null,
+        if (focusedOnly) "focused" else null,
+    ).joinToString(", ", "WindowFilter(", ")")
+
+    companion object {
+
+        /**
+         * 由顶层 AND 条件得到窗口过滤
+         * 假定包名及 displayId 在同一窗口内相同，窗口不满足时其所有节点都不满足
+         */
+        internal fun derive(conditions: List<MatchCondition>): WindowFilter? {
+            var filter: WindowFilter? = null
+            for (cond in conditions) {
+                val f = when (cond) {
+                    is PackageCondition -> WindowFilter().packages(*cond.names)
+                    is DisplayIdCondition -> WindowFilter().displayIds(cond.displayId)
+                    else -> continue
+                }
+                filter = f and filter
+            }
+            return filter
+        }
+
+        private fun intersect(a: IntArray?, b: IntArray?): IntArray? {
+            a ?: return b
+            b ?: return a
+            return a.filter { it in b }.toIntArray()
+        }
+
+        private fun union(a: IntArray?, b: IntArray?): IntArray? {
+            a ?: return b
+            b ?: return a
+            return (a + b).distinct().toIntArray()
+        }
+
+        private fun intersect(
+            a: Array<out CharSequence>?, b: Array<out CharSequence>?
+        ): Array<out CharSequence>? {
+            a ?: return b
+            b ?: return a
+            val bs = b.map { it.toString() }
+            return a.filter { it.toString() in bs }.toTypedArray()
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package cn.vove7.auto.core.viewnode
+
+import android.os.Build
+import android.view.accessibility.AccessibilityNodeInfo
+import cn.vove7.auto.core.AccessibilityEvents
+import cn.vove7.auto.core.viewfinder.AcsNode
+import cn.vove7.auto.core.viewfinder.FinderConfig
+import org.lsposed.hiddenapibypass.HiddenApiBypass
+import timber.log.Timber
+import java.lang.ref.WeakReference
+import java.lang.reflect.Method
+
+/**
+ * # NodeIdentity
+ * ViewNode 规范化：同一视图版本内，同一屏幕节点只对应一个 [ViewNode]
+ *
+ * 以 windowId + sourceNodeId 为键，弱引用保存；遍历、children、parent、childAt
+ * 获取的同一节点共用一个 ViewNode，结果集合运算可直接比较引用
+ *
+ * 再次获取已存在的节点时，ViewNode 换用新获取的节点数据并丢弃子节点缓存，不会返回旧数据；
+ * 视图版本（[AccessibilityEvents.contentVersion]）改变时清空，开启后服务需订阅内容事件
+ * sourceNodeId 为隐藏 API，不可用时不做规范化
+ * @see FinderConfig.NODE_IDENTITY
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+object NodeIdentity {
+
+    val enabled: Boolean get() = FinderConfig.NODE_IDENTITY && sourceIdAvailable
+
+    // getSourceNodeId 可用
+    val sourceIdAvailable: Boolean get() = getSourceNodeId != null
+
+    private val lock = Any()
+
+    private var version = -1L
+
+    // windowId -> sourceNodeId -> ViewNode
+    private val windows = HashMap<Int, HashMap<Long, WeakReference<ViewNode>>>()
+
+    // 上次清理后新增的数量
+    private var added = 0
+
+    // AccessibilityNodeInfo.getSourceNodeId()
+    private val getSourceNodeId: Method? by lazy {
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                HiddenApiBypass.getDeclaredMethod(
+                    AccessibilityNodeInfo::class.java, "getSourceNodeId"
+                )
+            } else {
+                AccessibilityNodeInfo::class.java.getDeclaredMethod("getSourceNodeId")
+            }.apply { isAccessible = true }
+        } catch (e: Throwable) {
+            Timber.w(e, "getSourceNodeId unavailable")
+            null
+        }
+    }
+
+    /**
+     * 节点在窗口内的 id（虚拟子节点 id shl 32 | View id），不可用时为 null
+     */
+    fun sourceNodeId(info: AccessibilityNodeInfo): Long? {
+        val m = getSourceNodeId ?: return null
+        return try {
+            m.invoke(info) as Long
+        } catch (e: Throwable) {
+            null
+        }
+    }
+
+    fun obtain(info: AccessibilityNodeInfo): ViewNode = obtain(AcsNode.wrap(info))
+
+    /**
+     * [info] 对应的 ViewNode，当前视图版本内已存在时更新为 [info] 后返回
+     */
+    fun obtain(info: AcsNode): ViewNode {
+        if (!FinderConfig.NODE_IDENTITY) return ViewNode(info)
+        val sid = sourceNodeId(info.unwrap()) ?: return ViewNode(info)
+        val wid = info.windowId
+        val v = AccessibilityEvents.contentVersion.value
+        synchronized(lock) {
+            if (v != version) {
+                windows.clear()
+                version = v
+                added = 0
+            }
+            val nodes = windows.getOrPut(wid) { HashMap() }
+            nodes[sid]?.get()?.let {
+                it.update(info)
+                return it
+            }
+            val vn = ViewNode(info)
+            nodes[sid] = WeakReference(vn)
+            if (++added >= PURGE_INTERVAL) purge()
+            return vn
+        }
+    }
+
+    // 移除已回收的引用
+    private fun purge() {
+        added = 0
+        val wit = windows.values.iterator()
+        while (wit.hasNext()) {
+            val nodes = wit.next()
+            nodes.values.removeAll { it.get() == null }
+            if (nodes.isEmpty()) wit.remove()
+        }
+    }
+
+    val size: Int get() = synchronized(lock) { windows.values.sumOf { it.size } }
+
+    fun clear() {
+        synchronized(lock) {
+            windows.clear()
+            added = 0
+        }
+    }
+
+    private const val PURGE_INTERVAL = 1024
+}
@@ -4,6 +4,7 @@ import android.graphics.Point
 import android.graphics.Rect
 import android.os.Build
 import android.os.Bundle
+import android.view.Display
 import android.view.ViewConfiguration
 import android.view.accessibility.AccessibilityNodeInfo
 import androidx.annotation.RequiresApi
@@ -11,6 +12,7 @@ import androidx.core.os.bundleOf
 import androidx.core.util.size
 import androidx.core.view.accessibility.AccessibilityNodeInfoCompat
 import androidx.core.view.accessibility.AccessibilityNodeInfoCompat.AccessibilityActionCompat
+import cn.vove7.auto.core.AccessibilityEvents
 import cn.vove7.auto.core.AutoApi
 import cn.vove7.auto.core.utils.ScreenAdapter
 import cn.vove7.auto.core.utils.ViewChildList
@@ -18,7 +20,11 @@ import cn.vove7.auto.core.utils.ViewNodeNotFoundException
 import cn.vove7.auto.core.utils.ensureActive
 import cn.vove7.auto.core.viewfinder.AcsNode
 import cn.vove7.auto.core.viewfinder.FinderConfig
+import cn.vove7.auto.core.viewfinder.KeyCondition
+import cn.vove7.auto.core.viewfinder.NodeKey
 import cn.vove7.auto.core.viewfinder.SmartFinder
+import cn.vove7.auto.core.viewfinder.TreeSnapshot
+import cn.vove7.auto.core.viewfinder.WindowFilter
 import java.lang.Thread.sleep
 
 /**
@@ -27,7 +33,9 @@ import java.lang.Thread.sleep
  */
 @Suppress("MemberVisibilityCanBePrivate")
 class ViewNode : ViewOperation {
-    val node: AcsNode
+    @Volatile
+    var node: AcsNode
+        private set
 
     constructor(node: AccessibilityNodeInfo) {
         this.node = AcsNode.wrap(node)
@@ -41,51 +49,91 @@ class ViewNode : ViewOperation {
 
     private var buildWithChildren = false
 
+    // 由 [withChildren] 构建的多窗口根节点
+    internal val isWindowsRoot: Boolean get() = buildWithChildren
+
+    // 属性缓存 @see FinderConfig.NODE_PROPERTY_CACHE
+    // 节点其他属性为本地字段读取，只缓存需要分配对象的 bounds 及 toString
+    // 已缓存属性位，视图版本改变、refresh 后清空
+    @Volatile
+    private var loaded = 0
+
+    @Volatile
+    private var loadedVersion = 0L
+
+    // 缓存的对象只整体替换，不修改
+    private var _bounds: Rect? = null
+    private var _boundsInParent: Rect? = null
+    private var _summary: String? = null
+
     companion object {
 
-        private const val ROOT_TAG = "ViewNodeRoot"
+        // 多窗口根节点 className 前缀 @see withChildren
+        internal const val ROOT_TAG = "ViewNodeRoot"
+
+        // 缓存属性位
+        private const val L_BOUNDS = 1
+        private const val L_BOUNDS_IN_PARENT = 1 shl 1
+        private const val L_SUMMARY = 1 shl 2
 
-        fun rootNodes(): ViewChildList {
+        /**
+         * @param filter 窗口过滤，不符合的窗口不获取根节点
+         */
+        @JvmOverloads
+        fun rootNodes(filter: WindowFilter? = null): ViewChildList {
             return if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-                rootNodesOfAllDisplays()
-            } else rootNodesOfAllWindows()
+                rootNodesOfAllDisplays(filter)
+            } else rootNodesOfAllWindows(filter)
         }
 
+        @JvmOverloads
         @RequiresApi(Build.VERSION_CODES.R)
-        fun rootNodesOfAllDisplays(): ViewChildList =
+        fun rootNodesOfAllDisplays(filter: WindowFilter? = null): ViewChildList =
             ViewChildList().also { list ->
                 AutoApi.windowsOnAllDisplays()
-                    .run { (0 until size).flatMap { valueAt(it) } }
+                    .run {
+                        (0 until size).flatMap { i ->
+                            valueAt(i).filter { filter?.acceptWindow(it, keyAt(i)) ?: true }
+                        }
+                    }
                     .sortedByDescending {
                         if (it.isActive) Int.MAX_VALUE else it.layer
                     }.forEach { win ->
-                        list.add(
-                            win.root?.let { r -> ViewNode(r.also(AccessibilityNodeInfo::refresh)) }
-                        )
+                        addWindowRoot(list, win.root, filter)
                     }
             }
 
-        fun rootNodesOfAllWindows(): ViewChildList =
+        @JvmOverloads
+        fun rootNodesOfAllWindows(filter: WindowFilter? = null): ViewChildList =
             ViewChildList().also { list ->
-                AutoApi.windows()?.sortedByDescending {
+                AutoApi.windows()?.filter {
+                    filter?.acceptWindow(it, Display.DEFAULT_DISPLAY) ?: true
+                }?.sortedByDescending {
                     if (it.isActive) Int.MAX_VALUE else it.layer
-                }?.map { win ->
-                    win.root?.let { r -> ViewNode(r.also(AccessibilityNodeInfo::refresh)) }
-                }?.also {
-                    list.addAll(it)
-                } ?: list.add(activeWinNode())
+                }?.forEach { win ->
+                    addWindowRoot(list, win.root, filter)
+                } ?: addWindowRoot(list, AutoApi.rootInActiveWindow(), filter)
             }
 
+        private fun addWindowRoot(
+            list: ViewChildList, root: AccessibilityNodeInfo?, filter: WindowFilter?
+        ) {
+            if (root != null && filter != null && !filter.acceptRoot(root)) return
+            list.add(root?.let { r -> NodeIdentity.obtain(r.also(AccessibilityNodeInfo::refresh)) })
+        }
+
         /**
          * 第一层为 windows
+         * @param filter 窗口过滤
          */
-        fun getRoot(): ViewNode {
-            return withChildren(rootNodes())
+        @JvmOverloads
+        fun getRoot(filter: WindowFilter? = null): ViewNode {
+            return withChildren(rootNodes(filter))
         }
 
         fun activeWinNode(): ViewNode? {
             return AutoApi.rootInActiveWindow()?.let {
-                ViewNode(it.also(AccessibilityNodeInfo::refresh))
+                NodeIdentity.obtain(it.also(AccessibilityNodeInfo::refresh))
             }
         }
 
@@ -119,23 +167,63 @@ class ViewNode : ViewOperation {
     override val packageName: String? get() = node.packageName?.toString()
 
     override val boundsInParent: Rect
-        get() {
-            val out = Rect()
-            @Suppress("DEPRECATION")
-            node.getBoundsInParent(out)
-            return out
+        get() = Rect().also { getBoundsInParent(it) }
+
+    override val bounds: Rect
+        get() = Rect().also { getBounds(it) }
+
+    /**
+     * 屏幕坐标写入 [out]，不创建 Rect
+     */
+    fun getBounds(out: Rect) {
+        if (isLoaded(L_BOUNDS)) {
+            out.set(_bounds!!)
+            return
+        }
+        node.getBoundsInScreen(out)
+        if (FinderConfig.NODE_PROPERTY_CACHE) {
+            _bounds = Rect(out)
+            setLoaded(L_BOUNDS)
         }
+    }
 
+    fun getBoundsInParent(out: Rect) {
+        if (isLoaded(L_BOUNDS_IN_PARENT)) {
+            out.set(_boundsInParent!!)
+            return
+        }
+        @Suppress("DEPRECATION")
+        node.getBoundsInParent(out)
+        if (FinderConfig.NODE_PROPERTY_CACHE) {
+            _boundsInParent = Rect(out)
+            setLoaded(L_BOUNDS_IN_PARENT)
+        }
+    }
 
-    override val bounds: Rect
-        get() {
-            val out = Rect()
-            node.getBoundsInScreen(out)
-            return out
+    private fun isLoaded(bit: Int): Boolean {
+        if (!FinderConfig.NODE_PROPERTY_CACHE) return false
+        val version = AccessibilityEvents.contentVersion.value
+        if (version != loadedVersion) {
+            loaded = 0
+            loadedVersion = version
         }
+        return loaded and bit != 0
+    }
+
+    // 缓存赋值后再标记（volatile 写），其他线程看到标记时缓存已赋值
+    private fun setLoaded(bit: Int) {
+        if (FinderConfig.NODE_PROPERTY_CACHE) loaded = loaded or bit
+    }
+
+    /**
+     * 清空属性缓存，之后重新从 [node] 读取
+     */
+    fun clearPropertyCache() {
+        loaded = 0
+    }
 
     override val parent: ViewNode?
-        get() = if (buildWithChildren) null else node.parent?.let { ViewNode(it) }
+        get() = if (buildWithChildren) null else node.parent?.let { NodeIdentity.obtain(it) }
 
     override val previousSibling: ViewNode?
         get() = parent?.children?.let { parChildren ->
@@ -180,6 +268,14 @@ class ViewNode : ViewOperation {
         return false
     }
 
+    // NodeIdentity 再次获取同一节点时换用新数据，子节点及属性缓存随之失效
+    internal fun update(info: AcsNode) {
+        if (info.unwrap() === node.unwrap()) return
+        node = info
+        clearChildrenCache()
+        loaded = 0
+    }
+
     fun clearChildrenCache() {
         if (!buildWithChildren) {
             childrenCache = null
@@ -209,7 +305,7 @@ class ViewNode : ViewOperation {
             e.printStackTrace()
             null
         }
-        return cn?.let { ViewNode(it) }
+        return cn?.let { NodeIdentity.obtain(it) }
     }
 
     override fun click(): Boolean = node.performAction(AccessibilityNodeInfo.ACTION_CLICK)
@@ -283,12 +379,14 @@ class ViewNode : ViewOperation {
             val arg = Bundle()
             arg.putCharSequence(AccessibilityNodeInfo.ACTION_ARGUMENT_SET_TEXT_CHARSEQUENCE, v)
             node.performAction(AccessibilityNodeInfo.ACTION_SET_TEXT, arg)
+            loaded = loaded and L_SUMMARY.inv()
         }
 
     override var hintText: CharSequence?
         get() = node.hintText
         set(value) {
             node.hintText = value
+            loaded = loaded and L_SUMMARY.inv()
         }
 
     override var progress: Float
@@ -354,31 +452,36 @@ class ViewNode : ViewOperation {
     override val isShowingHint: Boolean get() = node.isShowingHintText
 
     override fun toString(): String {
-        return nodeSummary(node)
+        if (isLoaded(L_SUMMARY)) return _summary!!
+        return nodeSummary(node).also {
+            if (FinderConfig.NODE_PROPERTY_CACHE) {
+                _summary = it
+                setLoaded(L_SUMMARY)
+            }
+        }
     }
 
     private fun nodeSummary(node: AcsNode): String {
         val id = node.viewIdResourceName
         val desc = node.contentDescription
+        val b = Rect()
         return buildString {
             append("{ class: ").append(className)
             if (id != null) append(", id: ").append(id.substring(id.lastIndexOf('/') + 1))
             if (node.text != null) append(", text: ${node.text}")
             if (hintText != null) append(", hintText: $hintText")
             if (desc != null) append(", desc: $desc")
-            append(", bounds: $bounds")
-            bounds.also {
-                append(", b_width: ")
-                append(it.width())
-                append(", b_height: ")
-                append(it.height())
-            }
-            boundsInParent.also {
-                append(", p_width: ")
-                append(it.height())
-                append(", p_height: ")
-                append(it.height())
-            }
+            getBounds(b)
+            append(", bounds: $b")
+            append(", b_width: ")
+            append(b.width())
+            append(", b_height: ")
+            append(b.height())
+            getBoundsInParent(b)
+            append(", p_width: ")
+            append(b.width())
+            append(", p_height: ")
+            append(b.height())
             append(", childCount: $childCount")
             if (node.isEditable) append(", Editable")
             if (node.isShowingHintText) append(", ShowingHint")
@@ -408,6 +511,11 @@ class ViewNode : ViewOperation {
     override val hash: String
         get() = "0x" + Integer.toHexString(node.hashCode())
 
+    /**
+     * 跨快照稳定的节点键，可用于 [TreeSnapshot.indexOfKey]、[KeyCondition]
+     */
+    val key: NodeKey get() = NodeKey.of(this)
+
     /**
      * 从该节点搜索 SmartFinder
      * @return SmartFinder
@@ -442,12 +550,14 @@ class ViewNode : ViewOperation {
         }
         set(value) {
             node.isVisibleToUser = value
+            loaded = loaded and L_SUMMARY.inv()
         }
 
     override fun isClickable() = node.isClickable
 
     override fun refresh(): Boolean {
         childrenCache = null
+        loaded = 0
         if (buildWithChildren) {
             childrenCache = rootNodesOfAllWindows()
             return true
@@ -0,0 +1,78 @@
+package cn.vove7.auto.core.utils
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.random.Random
+
+/**
+ * # AhoCorasickTest
+ * 与逐个 String.contains 结果对比
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+class AhoCorasickTest {
+
+    private fun naive(patterns: Array<String>, text: String, ignoreCase: Boolean) =
+        patterns.any { text.contains(it, ignoreCase) }
+
+    private fun check(patterns: Array<String>, text: String, ignoreCase: Boolean = false) {
+        assertEquals(
+            "${patterns.contentToString()} in '$text'",
+            naive(patterns, text, ignoreCase),
+            AhoCorasick(patterns, ignoreCase).containsAny(text)
+        )
+    }
+
+    @Test
+    fun overlappingPatterns() {
+        val ps = arrayOf("he", "she", "his", "hers")
+        check(ps, "ushers")
+        check(ps, "sh")
+        check(ps, "hi")
+        check(ps, "ahishe")
+        check(arrayOf("abcd", "bc"), "abce")
+        check(arrayOf("aaa", "aab"), "aaab")
+    }
+
+    @Test
+    fun failureLinks() {
+        // 失配后需沿失配链回到较短前缀继续匹配
+        val ps = arrayOf("abcabd", "cab", "bcx")
+        assertTrue(AhoCorasick(ps, false).containsAny("abcabcabd"))
+        assertTrue(AhoCorasick(ps, false).containsAny("xcabx"))
+        assertFalse(AhoCorasick(ps, false).containsAny("abcaabcy"))
+        // 模式为另一模式的后缀，只能经失配链发现
+        assertTrue(AhoCorasick(arrayOf("xyzab", "ab"), false).containsAny("xyzaq_ab"))
+        assertTrue(AhoCorasick(arrayOf("abcde", "cd"), false).containsAny("abcdx"))
+    }
+
+    @Test
+    fun emptyAndNone() {
+        assertTrue(AhoCorasick(arrayOf("x", "")).containsAny(""))
+        assertFalse(AhoCorasick(arrayOf()).containsAny("abc"))
+        assertFalse(AhoCorasick(arrayOf("abc")).containsAny(""))
+    }
+
+    @Test
+    fun ignoreCase() {
+        check(arrayOf("Wi-Fi", "蓝牙"), "打开wi-fi", ignoreCase = true)
+        check(arrayOf("ÉCOLE"), "une école", ignoreCase = true)
+        check(arrayOf("Wi-Fi"), "打开wi-fi", ignoreCase = false)
+    }
+
+    @Test
+    fun random() {
+        val r = Random(5)
+        val alphabet = "abcAB"
+        repeat(3000) {
+            val ps = Array(r.nextInt(1, 6)) {
+                String(CharArray(r.nextInt(1, 5)) { alphabet[r.nextInt(alphabet.length)] })
+            }
+            val text = String(CharArray(r.nextInt(0, 20)) { alphabet[r.nextInt(alphabet.length)] })
+            check(ps, text, ignoreCase = r.nextBoolean())
+        }
+    }
+}
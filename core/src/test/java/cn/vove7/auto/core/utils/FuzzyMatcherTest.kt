@@ -0,0 +1,132 @@
+package cn.vove7.auto.core.utils
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Locale
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.random.Random
+
+/**
+ * # FuzzyMatcherTest
+ * 位并行编辑距离与动态规划结果对比
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+class FuzzyMatcherTest {
+
+    // 基准：O(mn) 动态规划
+    private fun dp(a: String, b: String): Int {
+        var prev = IntArray(b.length + 1) { it }
+        var cur = IntArray(b.length + 1)
+        for (i in 1..a.length) {
+            cur[0] = i
+            for (j in 1..b.length) {
+                val cost = if (a[i - 1] == b[j - 1]) 0 else 1
+                cur[j] = min(min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + cost)
+            }
+            val t = prev
+            prev = cur
+            cur = t
+        }
+        return prev[b.length]
+    }
+
+    private fun dpSimilarity(a: String, b: String): Float {
+        val len = max(a.length, b.length)
+        return 1 - dp(a, b).toFloat() / len
+    }
+
+    private fun randomText(r: Random, len: Int, alphabet: String) =
+        String(CharArray(len) { alphabet[r.nextInt(alphabet.length)] })
+
+    private fun check(pattern: String, text: String, ignoreCase: Boolean = false) {
+        val m = FuzzyMatcher(pattern, ignoreCase)
+        val p = if (ignoreCase) pattern.lowercase(Locale.getDefault()) else pattern
+        val t = if (ignoreCase) text.lowercase(Locale.getDefault()) else text
+        val expected = dp(p, t)
+        assertEquals("'$pattern' / '$text'", expected, m.distance(text))
+        // 超出上限时返回 maxDist + 1
+        for (k in 0..expected + 1) {
+            val d = m.distance(text, k)
+            if (expected <= k) assertEquals(expected, d) else assertEquals(k + 1, d)
+        }
+    }
+
+    @Test
+    fun emptyStrings() {
+        check("", "")
+        check("", "abc")
+        check("abc", "")
+        assertEquals(Float.NaN, FuzzyMatcher("").similarity(""), 0f)
+        assertEquals(Float.NaN, FuzzyMatcher("").similarity("", 0f), 0f)
+        assertEquals(0f, FuzzyMatcher("").similarity("abc"), 0f)
+    }
+
+    @Test
+    fun shortPatterns() {
+        val r = Random(1)
+        repeat(2000) {
+            check(randomText(r, r.nextInt(1, 20), "abcd"), randomText(r, r.nextInt(0, 30), "abcd"))
+        }
+    }
+
+    @Test
+    fun blockBoundaries() {
+        val r = Random(2)
+        for (m in listOf(63, 64, 65, 127, 128, 129, 200)) {
+            repeat(50) {
+                val p = randomText(r, m, "abc")
+                check(p, randomText(r, r.nextInt(0, m * 2), "abc"))
+                // 少量编辑
+                val sb = StringBuilder(p)
+                repeat(r.nextInt(0, 6)) {
+                    val i = r.nextInt(sb.length)
+                    when (r.nextInt(3)) {
+                        0 -> sb.setCharAt(i, 'x')
+                        1 -> sb.deleteCharAt(i)
+                        else -> sb.insert(i, 'y')
+                    }
+                }
+                check(p, sb.toString())
+            }
+        }
+    }
+
+    @Test
+    fun caseFolding() {
+        check("Settings", "settINGS", ignoreCase = true)
+        check("WLAN 设置", "wlan设置", ignoreCase = true)
+        check("ÀÉÎ", "àéî", ignoreCase = true)
+        assertEquals(1, FuzzyMatcher("Abc", false).distance("abc"))
+        assertEquals(0, FuzzyMatcher("Abc").distance("aBC"))
+        val r = Random(3)
+        repeat(500) {
+            check(
+                randomText(r, r.nextInt(1, 90), "aAbBéÉ"),
+                randomText(r, r.nextInt(0, 90), "aAbBéÉ"),
+                ignoreCase = true
+            )
+        }
+    }
+
+    @Test
+    fun similarityLimit() {
+        val r = Random(4)
+        repeat(2000) {
+            val p = randomText(r, r.nextInt(0, 80), "abc")
+            val t = randomText(r, r.nextInt(0, 80), "abc")
+            val m = FuzzyMatcher(p, false)
+            val expected = dpSimilarity(p, t)
+            if (expected.isNaN()) return@repeat
+            assertEquals(expected, m.similarity(t), 0f)
+            for (limit in floatArrayOf(0f, 0.3f, 0.5f, 0.8f, 1f, expected)) {
+                val s = m.similarity(t, limit)
+                if (expected >= limit) assertEquals(expected, s, 0f)
+                else assertEquals(Float.NaN, s, 0f)
+                assertEquals(expected >= limit, m.matches(t, limit))
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package cn.vove7.auto.core.utils
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.random.Random
+
+/**
+ * # TextSetTest
+ * 与 String.equals 结果对比
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+class TextSetTest {
+
+    private fun naive(texts: Array<String>, s: String, ignoreCase: Boolean) =
+        texts.any { it.equals(s, ignoreCase) }
+
+    @Test
+    fun regionMatching() {
+        val set = TextSet(arrayOf("ok", "Cancel", "确定"))
+        val text = StringBuilder("[OK][cancel][确定][okay]")
+        assertTrue(set.contains(text, 1, 3))
+        assertTrue(set.contains(text, 5, 11))
+        assertTrue(set.contains(text, 13, 15))
+        assertFalse(set.contains(text, 17, 21))
+        assertTrue(set.contains(text, 17, 19))
+        assertFalse(set.contains(text, 0, 3))
+        assertFalse(set.contains(text, 1, 1))
+        assertTrue(TextSet(arrayOf("")).contains(text, 4, 4))
+    }
+
+    @Test
+    fun ignoreCase() {
+        assertTrue("OK" in TextSet(arrayOf("ok")))
+        assertFalse("OK" in TextSet(arrayOf("ok"), false))
+        assertTrue("ÉCOLE" in TextSet(arrayOf("école")))
+        assertFalse("ok" in TextSet(arrayOf()))
+    }
+
+    @Test
+    fun random() {
+        val r = Random(6)
+        val alphabet = "abAB"
+        fun word() = String(CharArray(r.nextInt(0, 4)) { alphabet[r.nextInt(alphabet.length)] })
+        repeat(2000) {
+            val texts = Array(r.nextInt(0, 10)) { word() }
+            val ignoreCase = r.nextBoolean()
+            val set = TextSet(texts, ignoreCase)
+            val s = word()
+            // 前后加填充，按区间查询
+            val text = "xx$s" + "yy"
+            assertEquals(naive(texts, s, ignoreCase), set.contains(text, 2, 2 + s.length))
+            assertEquals(naive(texts, s, ignoreCase), s in set)
+        }
+    }
+}
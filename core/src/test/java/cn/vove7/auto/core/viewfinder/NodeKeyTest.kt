@@ -0,0 +1,71 @@
+package cn.vove7.auto.core.viewfinder
+
+import android.graphics.Rect
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * # NodeKeyTest
+ * 结构路径：实时遍历（父节点链经过多窗口根节点）与快照（窗口根节点无父节点）得到相同的键
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+class NodeKeyTest {
+
+    // 只提供结构路径需要的属性
+    private class FakeProps(
+        override val className: CharSequence?,
+        override val viewId: String?,
+        override val parent: NodeProps?,
+        override val indexInParent: Int,
+    ) : NodeProps {
+        override val acsNode: AcsNode get() = throw UnsupportedOperationException()
+        override val text: CharSequence? get() = null
+        override val desc: CharSequence? get() = null
+        override val packageName: CharSequence? get() = null
+        override val childCount: Int get() = 0
+        override val displayId: Int get() = -1
+        override fun flag(flag: Int) = false
+        override fun getBounds(out: Rect) {}
+        override fun anyChild(predicate: (NodeProps) -> Boolean) = false
+        override fun anyDescendant(
+            maxDepth: Int, maxNodes: Int, predicate: (NodeProps) -> Boolean
+        ) = false
+    }
+
+    // 第二个窗口中 FrameLayout > LinearLayout[1] > Button[0]#ok
+    private fun leaf(windowRootParent: NodeProps?, windowRootIndex: Int): NodeProps {
+        val win = FakeProps("android.widget.FrameLayout", null, windowRootParent, windowRootIndex)
+        val list = FakeProps("android.widget.LinearLayout", null, win, 1)
+        return FakeProps("android.widget.Button", "com.app:id/ok", list, 0)
+    }
+
+    private val expected =
+        "android.widget.FrameLayout/android.widget.LinearLayout[1]/android.widget.Button[0]#ok"
+
+    @Test
+    fun liveWalkMatchesSnapshot() {
+        // DFS 从 ViewNode.getRoot() 开始，窗口根节点的父节点为多窗口根节点
+        val windowsRoot = FakeProps("ViewNodeRoot[Win Size: 2]", null, null, -1)
+        val live = leaf(windowsRoot, 1)
+        // 快照中窗口根节点的父节点为 null
+        val snapshot = leaf(null, -1)
+
+        assertEquals(expected, NodeKey.pathOf(live))
+        assertEquals(expected, NodeKey.pathOf(snapshot))
+        assertEquals(
+            NodeKey.structural(3, NodeKey.pathOf(snapshot)),
+            NodeKey.structural(3, NodeKey.pathOf(live))
+        )
+    }
+
+    @Test
+    fun parseRoundTrip() {
+        val structural = NodeKey.structural(3, expected)
+        assertEquals(structural, NodeKey.parse(structural.toString()))
+        val id = NodeKey.of(7, 0x1234_0000_0005L)
+        assertEquals("w7:123400000005", id.toString())
+        assertEquals(id, NodeKey.parse(id.toString()))
+    }
+}
@@ -0,0 +1,90 @@
+package cn.vove7.auto.core.viewfinder
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertThrows
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * # SelectorTest
+ * 选择器解析
+ *
+ * @author Vove
+ * @date 2026/10/17
+ */
+class SelectorTest {
+
+    @Before
+    fun setUp() {
+        Selector.clearCache()
+    }
+
+    private fun parse(s: String) = Selector.compile(s).toString()
+
+    @Test
+    fun dottedClassName() {
+        assertEquals("CLASSNAME like [android.widget.Button]", parse(".android.widget.Button"))
+        assertEquals("CLASSNAME like [Button]", parse(".Button"))
+    }
+
+    @Test
+    fun dottedAndQuotedId() {
+        assertEquals("ID == com.app.ok", parse("#com.app.ok"))
+        assertEquals("ID == com.app:id/ok", parse("#\"com.app:id/ok\""))
+        assertEquals("ID == ok", parse("[id=ok]"))
+    }
+
+    @Test
+    fun compound() {
+        assertEquals(
+            "(CLASSNAME like [android.widget.EditText] && ID == pwd && Focused)",
+            parse(".android.widget.EditText#pwd:focused")
+        )
+        assertEquals(
+            "(TEXT like 设置 >= 0.8 && NotChecked)",
+            parse("[text%=\"设置\" 0.8]:checked(false)")
+        )
+    }
+
+    @Test
+    fun combinators() {
+        assertEquals(
+            "(CLASSNAME like [TextView] && PARENT CLASSNAME like [ListView])",
+            parse(".ListView > .TextView")
+        )
+        assertEquals(
+            "(CLASSNAME like [TextView] && ANCESTOR CLASSNAME like [ListView])",
+            parse(".ListView .TextView")
+        )
+        assertEquals(
+            "(CLASSNAME like [B] && SIBLING CLASSNAME like [A])",
+            parse(".A ~ .B")
+        )
+        assertEquals("(ID == a || ID == b)", parse("#a, #b"))
+    }
+
+    @Test
+    fun freshPlanPerCall() {
+        val a = Selector.compile(".A > .B")
+        val b = Selector.compile(".A > .B")
+        assertEquals(1, Selector.cacheSize)
+        assertNotSame(a, b)
+        (a as ConditionGroup).and(HasTextCondition)
+        assertEquals("(CLASSNAME like [B] && PARENT CLASSNAME like [A])", b.toString())
+
+        // 叶子条件不可变，共享同一实例
+        assertSame(Selector.compile("#ok"), Selector.compile("#ok"))
+    }
+
+    @Test
+    fun syntaxErrors() {
+        listOf(
+            "", ".", "#", "[text]", "[foo=1]", "[id*=x]", "[display=a]",
+            ":unknown", ":checked(yes)", "#\"unterminated", ".A >", ":nth(x)"
+        ).forEach { s ->
+            assertThrows(s, IllegalArgumentException::class.java) { Selector.compile(s) }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import android.view.accessibility.AccessibilityNodeInfo
 import android.view.accessibility.AccessibilityWindowInfo
 import androidx.annotation.CallSuper
 import androidx.annotation.RequiresApi
+import cn.vove7.auto.core.AccessibilityEvents
 import cn.vove7.auto.core.AppPageInfo
 import cn.vove7.auto.core.AutoApi
 import cn.vove7.auto.core.OnPageUpdate
@@ -73,6 +74,7 @@ open class AutoInstrumentation : Instrumentation(), AutoApi {
     private fun initServiceInfo() {
         val si = uiAutomation.serviceInfo
         si.eventTypes = TYPE_WINDOWS_CHANGED
+        si.eventTypes = si.eventTypes or AccessibilityEvents.requiredEventTypes
         si.flags = si.flags or AccessibilityServiceInfo.FLAG_RETRIEVE_INTERACTIVE_WINDOWS or
                 AccessibilityServiceInfo.FLAG_REQUEST_ENHANCED_WEB_ACCESSIBILITY
         si.feedbackType = AccessibilityServiceInfo.FEEDBACK_ALL_MASK
@@ -80,6 +82,7 @@ open class AutoInstrumentation : Instrumentation(), AutoApi {
         onBuildServiceInfo(si)
         Timber.i("uiAutomation.serviceInfo: $si")
         uiAutomation.serviceInfo = si
+        AccessibilityEvents.onSubscribe(si.eventTypes)
     }
 
     open fun onBuildServiceInfo(serviceInfo: AccessibilityServiceInfo) {
@@ -203,6 +206,7 @@ open class AutoInstrumentation : Instrumentation(), AutoApi {
         motionEventInjector.onDestroy()
         INS = null
         PageUpdateMonitor.removeOnPageUpdateListener(pageListener)
+        AccessibilityEvents.onUnsubscribe()
         destroyAutoService()
     }
 